@@ -22,9 +22,12 @@ import android.app.Application;
 import android.support.annotation.NonNull;
 
 import com.achep.acdisplay.blacklist.Blacklist;
+import com.achep.acdisplay.graphics.IconFactory;
+import com.achep.acdisplay.notifications.RemoteViewsCache;
 import com.achep.acdisplay.permissions.AccessManager;
 import com.achep.base.billing.CheckoutInternal;
 import com.achep.base.utils.smiley.SmileyParser;
+import com.achep.headsup.HeadsUpBase;
 
 import org.solovyev.android.checkout.Checkout;
 import org.solovyev.android.checkout.ProductTypes;
@@ -94,9 +97,19 @@ public class App extends Application {
         Config.getInstance().onLowMemory();
         Blacklist.getInstance().onLowMemory();
         mAccessManager.onLowMemory();
+        IconFactory.getCache().onLowMemory();
+        RemoteViewsCache.getInstance().onLowMemory();
+        HeadsUpBase.getInstance().onLowMemory();
         super.onLowMemory();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        IconFactory.getCache().onTrimMemory(level);
+        RemoteViewsCache.getInstance().onTrimMemory(level);
+        super.onTrimMemory(level);
+    }
+
     @NonNull
     public static App get() {
         return instance;
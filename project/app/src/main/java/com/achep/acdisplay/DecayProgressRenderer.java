@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.achep.base.tests.Check;
+
+import java.util.ArrayList;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * Advances all running {@link Timeout.Gui decay progress bars} together, from
+ * one {@link Choreographer} frame callback. The callback is posted only while
+ * there's at least one running bar.
+ *
+ * @author Artem Chepurnoy
+ */
+final class DecayProgressRenderer implements Choreographer.FrameCallback {
+
+    private static final String TAG = "DecayProgressRenderer";
+
+    private static DecayProgressRenderer sInstance;
+
+    @NonNull
+    static DecayProgressRenderer getInstance() {
+        Check.getInstance().isInMainThread();
+        if (sInstance == null) {
+            sInstance = new DecayProgressRenderer();
+        }
+        return sInstance;
+    }
+
+    private final ArrayList<Timeout.Gui> mGuis = new ArrayList<>(4);
+    private boolean mScheduled;
+
+    // Frame-time stats
+    private int mFrameCount;
+    private int mBarFrameCount;
+    private long mFrameTotalNanos;
+
+    private DecayProgressRenderer() { /* empty */ }
+
+    /**
+     * Starts advancing the bar on each frame.
+     *
+     * @see #remove(Timeout.Gui)
+     */
+    void add(@NonNull Timeout.Gui gui) {
+        if (!mGuis.contains(gui)) mGuis.add(gui);
+        if (!mScheduled) {
+            mScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops advancing the bar. The frame callback stays posted until the next frame,
+     * and is not re-posted if nothing is left to render.
+     *
+     * @see #add(Timeout.Gui)
+     */
+    void remove(@NonNull Timeout.Gui gui) {
+        mGuis.remove(gui);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        final int count = mGuis.size();
+        if (count == 0) return;
+
+        final long start = System.nanoTime();
+        for (int i = count - 1; i >= 0; i--) {
+            if (!mGuis.get(i).onFrame()) mGuis.remove(i);
+        }
+        mFrameTotalNanos += System.nanoTime() - start;
+        mFrameCount++;
+        mBarFrameCount += count;
+
+        if (!mGuis.isEmpty()) {
+            mScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else if (DEBUG) {
+            Log.d(TAG, "Rendered " + mFrameCount + " frames of decay progress, "
+                    + getAverageNanosPerBar() + " nanos per bar.");
+        }
+    }
+
+    /**
+     * @return the number of rendered frames.
+     */
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return the average time it takes to advance one bar
+     * per frame, in nanoseconds.
+     */
+    long getAverageNanosPerBar() {
+        return mBarFrameCount == 0 ? 0 : mFrameTotalNanos / mBarFrameCount;
+    }
+
+}
@@ -18,21 +18,24 @@
  */
 package com.achep.acdisplay;
 
-import android.os.Message;
-import android.os.SystemClock;
+import android.content.res.Resources;
 import android.support.annotation.NonNull;
-import android.view.animation.LinearInterpolator;
-import android.widget.ProgressBar;
+import android.support.annotation.Nullable;
+import android.view.View;
 
-import com.achep.acdisplay.ui.animations.ProgressBarAnimation;
-import com.achep.base.async.WeakHandler;
 import com.achep.base.interfaces.ISubscriptable;
-import com.achep.base.tests.Check;
-import com.achep.base.utils.MathUtils;
+import com.achep.base.ui.drawables.DecayProgressDrawable;
+import com.achep.base.utils.power.PowerSaveDetector;
+import com.achep.headsup.R;
 
 import java.util.ArrayList;
 
 /**
+ * The pausable timeout. All timeouts of a looper are run by its
+ * {@link TimeoutScheduler scheduler}, so setting, pausing or resuming
+ * a timeout doesn't send any messages. The timeout must be used on
+ * the thread it was created on.
+ *
  * @author Artem Chepurnoy
  */
 public class Timeout implements ISubscriptable<Timeout.OnTimeoutEventListener> {
@@ -51,27 +54,39 @@ public class Timeout implements ISubscriptable<Timeout.OnTimeoutEventListener> {
 
     }
 
-    private static final int SET = 0;
-    private static final int RESUME = 1;
-    private static final int PAUSE = 2;
-    private static final int CLEAR = 3;
-    private static final int TIMEOUT = 4;
+    private static final OnTimeoutEventListener[] EMPTY_LISTENERS = new OnTimeoutEventListener[0];
 
     private final ArrayList<OnTimeoutEventListener> mListeners = new ArrayList<>(3);
-    private final H mHandler = new H(this);
+    @NonNull
+    private OnTimeoutEventListener[] mListenersArray = EMPTY_LISTENERS;
+    @NonNull
+    private final TimeoutScheduler mScheduler;
 
     private long mTimeoutPausedAt;
     private long mTimeoutDuration;
-    private long mTimeoutAt;
+    long mTimeoutAt;
+
+    /**
+     * The position in the heap of the {@link #mScheduler scheduler},
+     * or {@code -1} if not scheduled.
+     */
+    int mHeapIndex = -1;
+
+    public Timeout() {
+        this(TimeoutScheduler.getInstance());
+    }
+
+    Timeout(@NonNull TimeoutScheduler scheduler) {
+        mScheduler = scheduler;
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
     public void registerListener(@NonNull OnTimeoutEventListener listener) {
-        synchronized (this) {
-            mListeners.add(listener);
-        }
+        mListeners.add(listener);
+        mListenersArray = mListeners.toArray(EMPTY_LISTENERS);
     }
 
     /**
@@ -79,15 +94,14 @@ public class Timeout implements ISubscriptable<Timeout.OnTimeoutEventListener> {
      */
     @Override
     public void unregisterListener(@NonNull OnTimeoutEventListener listener) {
-        synchronized (this) {
-            mListeners.remove(listener);
-        }
+        mListeners.remove(listener);
+        mListenersArray = mListeners.toArray(EMPTY_LISTENERS);
     }
 
     private void notifyListeners(final int event) {
-        synchronized (this) {
-            for (OnTimeoutEventListener l : mListeners) l.onTimeoutEvent(this, event);
-        }
+        // Listeners may unregister while being notified,
+        // so iterate over the snapshot.
+        for (OnTimeoutEventListener l : mListenersArray) l.onTimeoutEvent(this, event);
     }
 
     //-- MAIN -----------------------------------------------------------------
@@ -113,8 +127,23 @@ public class Timeout implements ISubscriptable<Timeout.OnTimeoutEventListener> {
      * @see #clear()
      */
     public void set(final int delay, boolean override) {
-        Message msg = Message.obtain(mHandler, SET, delay, MathUtils.bool(override));
-        mHandler.sendMessage(msg);
+        mScheduler.checkThread();
+        final long now = mScheduler.uptimeMillis();
+        final boolean isPaused = mTimeoutPausedAt != 0;
+        final long timeoutAt = now + delay;
+        final long timeoutAtOld = mTimeoutAt + (isPaused
+                ? now - mTimeoutPausedAt
+                : 0);
+
+        if (mTimeoutAt == 0 || timeoutAtOld > timeoutAt || override) {
+            mTimeoutDuration = delay;
+            mTimeoutAt = timeoutAt;
+
+            if (isPaused) {
+                mTimeoutPausedAt = now;
+            } else mScheduler.schedule(this);
+            notifyListeners(EVENT_SET);
+        }
     }
 
     /**
@@ -123,7 +152,12 @@ public class Timeout implements ISubscriptable<Timeout.OnTimeoutEventListener> {
      * @see #resume()
      */
     public void pause() {
-        mHandler.sendEmptyMessage(PAUSE);
+        mScheduler.checkThread();
+        if (mTimeoutPausedAt == 0) {
+            mTimeoutPausedAt = mScheduler.uptimeMillis();
+            mScheduler.cancel(this);
+            notifyListeners(EVENT_PAUSED);
+        }
     }
 
     /**
@@ -134,156 +168,141 @@ public class Timeout implements ISubscriptable<Timeout.OnTimeoutEventListener> {
      * @see #clear()
      */
     public void resume() {
-        mHandler.sendEmptyMessage(RESUME);
-    }
-
-    /**
-     * Clears the timeout.
-     *
-     * @see #set(int, boolean)
-     * @see #pause()
-     */
-    public void clear() {
-        mHandler.sendEmptyMessage(CLEAR);
-    }
-
-    //-- OTHER -----------------------------------------------------------------
-
-    private long uptimeMillis() {
-        return SystemClock.uptimeMillis();
-    }
-
-    private void checkThread() {
-        final Thread handlerThread = mHandler.getLooper().getThread();
-        final Thread currentThread = Thread.currentThread();
-        Check.getInstance().isTrue(handlerThread.equals(currentThread));
-    }
-
-    //-- HANDLER --------------------------------------------------------------
-
-    /**
-     * @author Artem Chepurnoy
-     */
-    private static class H extends WeakHandler<Timeout> {
-
-        public H(@NonNull Timeout object) {
-            super(object);
-        }
-
-        @Override
-        protected void onHandleMassage(@NonNull Timeout timeout, Message msg) {
-            switch (msg.what) {
-                case SET:
-                    timeout.internalSet(msg.arg1, msg.arg2 != 0);
-                    break;
-                case RESUME:
-                    timeout.internalResume();
-                    break;
-                case PAUSE:
-                    timeout.internalPause();
-                    break;
-                case CLEAR:
-                    timeout.internalClear();
-                    break;
-                case TIMEOUT:
-                    timeout.internalTimeout();
-                    break;
-                default:
-                    throw new IllegalArgumentException();
-            }
-        }
-
-    }
-
-    private void internalSet(long delayMillis, boolean resetOld) {
-        checkThread();
-        final boolean isPaused = mTimeoutPausedAt != 0;
-        final long timeoutAt = uptimeMillis() + delayMillis;
-        final long timeoutAtOld = mTimeoutAt + (isPaused
-                ? uptimeMillis() - mTimeoutPausedAt
-                : 0);
-
-        if (mTimeoutAt == 0 || timeoutAtOld > timeoutAt || resetOld) {
-            mTimeoutDuration = delayMillis;
-            mTimeoutAt = timeoutAt;
-
-            if (isPaused) {
-                mTimeoutPausedAt = uptimeMillis();
-                notifyListeners(EVENT_SET);
-            } else {
-                notifyListeners(EVENT_SET);
-                mHandler.removeMessages(TIMEOUT);
-                mHandler.sendEmptyMessageAtTime(TIMEOUT, mTimeoutAt);
-            }
-        }
-    }
-
-    private void internalResume() {
+        mScheduler.checkThread();
         if (mTimeoutPausedAt != 0) {
-            checkThread();
-
             final long pausedAt = mTimeoutPausedAt;
             mTimeoutPausedAt = 0;
 
             if (mTimeoutAt > 0) {
-                long delta = uptimeMillis() - pausedAt;
-                mTimeoutAt += delta;
-                mHandler.sendEmptyMessageAtTime(TIMEOUT, mTimeoutAt);
+                mTimeoutAt += mScheduler.uptimeMillis() - pausedAt;
+                mScheduler.schedule(this);
                 notifyListeners(EVENT_RESUMED);
             }
         }
     }
 
-    private void internalPause() {
-        if (mTimeoutPausedAt == 0) {
-            checkThread();
-            mTimeoutPausedAt = uptimeMillis();
-            mHandler.removeMessages(TIMEOUT);
-            notifyListeners(EVENT_PAUSED);
-        }
-    }
-
-    private void internalClear() {
-        checkThread();
+    /**
+     * Clears the timeout.
+     *
+     * @see #set(int, boolean)
+     * @see #pause()
+     */
+    public void clear() {
+        mScheduler.checkThread();
         mTimeoutAt = 0;
         mTimeoutDuration = 0;
         mTimeoutPausedAt = 0;
-        mHandler.removeMessages(TIMEOUT);
+        mScheduler.cancel(this);
         notifyListeners(EVENT_CLEARED);
     }
 
-    private void internalTimeout() {
-        checkThread();
+    /**
+     * Called by the {@link #mScheduler scheduler} at the deadline.
+     */
+    void onTimeout() {
         mTimeoutAt = 0;
         mTimeoutDuration = 0;
-        Check.getInstance().isTrue(mTimeoutPausedAt == 0);
         notifyListeners(EVENT_TIMEOUT);
     }
 
+    /**
+     * @return the fraction of the duration left before the timeout, from {@code 1}
+     * to {@code 0}, or {@code 0} if the timeout is not set.
+     */
+    public float getProgress() {
+        if (mTimeoutAt == 0 || mTimeoutDuration <= 0) return 0f;
+        final long now = mTimeoutPausedAt != 0 ? mTimeoutPausedAt : mScheduler.uptimeMillis();
+        final float progress = (float) (mTimeoutAt - now) / mTimeoutDuration;
+        return Math.max(0f, Math.min(1f, progress));
+    }
+
+    /**
+     * @return {@code true} if the timeout is paused, {@code false} otherwise.
+     * @see #pause()
+     */
+    public boolean isPaused() {
+        return mTimeoutPausedAt != 0;
+    }
+
     //-- GUI ------------------------------------------------------------------
 
     /**
+     * Shows the progress of the timeout with a {@link DecayProgressDrawable}, set as
+     * the background of given view. The bars of all running timeouts are advanced by
+     * the {@link DecayProgressRenderer}, unless the device is in power save mode.
+     *
      * @author Artem Chepurnoy
      */
     public static class Gui implements Timeout.OnTimeoutEventListener {
 
-        private static final int MAX = 300;
-
-        private final ProgressBarAnimation mProgressBarAnimation;
-        private final ProgressBar mProgressBar;
+        @NonNull
+        private final DecayProgressDrawable mDrawable;
+        @Nullable
+        private PowerSaveDetector mPowerSaveDetector;
+        @Nullable
+        private Timeout mTimeout;
+
+        public Gui(@NonNull View view) {
+            Resources res = view.getResources();
+            mDrawable = new DecayProgressDrawable(
+                    res.getColor(R.color.decay_progress_track),
+                    res.getColor(R.color.decay_progress));
+            view.setBackground(mDrawable);
+        }
 
-        public Gui(@NonNull ProgressBar progressBar) {
-            mProgressBar = progressBar;
-            mProgressBar.setMax(MAX);
-            mProgressBar.setProgress(MAX);
-            mProgressBarAnimation = new ProgressBarAnimation(mProgressBar, MAX, 0);
-            mProgressBarAnimation.setInterpolator(new LinearInterpolator());
+        /**
+         * Sets the detector of power save mode, in which the
+         * progress is not shown at all.
+         */
+        public void setPowerSaveDetector(@Nullable PowerSaveDetector psd) {
+            mPowerSaveDetector = psd;
         }
 
         @Override
         public void onTimeoutEvent(@NonNull Timeout timeout, int event) {
-            // TODO: Write the timeout's gui
+            mTimeout = timeout;
+            switch (event) {
+                case EVENT_SET:
+                case EVENT_RESUMED:
+                    if (mPowerSaveDetector != null && mPowerSaveDetector.isPowerSaveMode()) {
+                        stop();
+                        break;
+                    }
+
+                    mDrawable.setProgress(timeout.getProgress());
+                    mDrawable.setShown(true);
+                    if (timeout.isPaused()) {
+                        DecayProgressRenderer.getInstance().remove(this);
+                    } else DecayProgressRenderer.getInstance().add(this);
+                    break;
+                case EVENT_PAUSED:
+                    DecayProgressRenderer.getInstance().remove(this);
+                    mDrawable.setProgress(timeout.getProgress());
+                    break;
+                case EVENT_CLEARED:
+                case EVENT_TIMEOUT:
+                    stop();
+                    break;
+            }
+        }
+
+        private void stop() {
+            DecayProgressRenderer.getInstance().remove(this);
+            mDrawable.setShown(false);
         }
+
+        /**
+         * Advances the progress bar; called by the {@link DecayProgressRenderer} on each frame.
+         *
+         * @return {@code true} to be called on the next frame, {@code false} otherwise.
+         */
+        boolean onFrame() {
+            final Timeout timeout = mTimeout;
+            if (timeout == null || timeout.isPaused() || !mDrawable.isShown()) return false;
+            mDrawable.setProgress(timeout.getProgress());
+            return true;
+        }
+
     }
 
 }
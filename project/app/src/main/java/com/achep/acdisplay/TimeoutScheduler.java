@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.achep.base.tests.Check;
+
+import java.util.Arrays;
+
+/**
+ * Schedules all {@link Timeout timeouts} of a looper with a single min-heap of deadlines
+ * and a single wake-up of the looper at the earliest one. Postponing a deadline doesn't
+ * touch the wake-up at all: the early wake-up finds nothing expired and re-arms itself
+ * for the new earliest deadline.
+ *
+ * @author Artem Chepurnoy
+ */
+final class TimeoutScheduler implements Runnable {
+
+    private static final ThreadLocal<TimeoutScheduler> sSchedulers = new ThreadLocal<>();
+
+    /**
+     * The source of time and wake-ups of the scheduler.
+     *
+     * @author Artem Chepurnoy
+     */
+    interface Host {
+
+        /**
+         * @return the current time in the {@link SystemClock#uptimeMillis()} base.
+         */
+        long uptimeMillis();
+
+        /**
+         * Runs the runnable at the given time, replacing the previous wake-up.
+         */
+        void wakeUpAt(@NonNull Runnable runnable, long uptimeMillis);
+
+    }
+
+    /**
+     * The {@link Host host} of the looper of the current thread.
+     *
+     * @author Artem Chepurnoy
+     */
+    private static final class LooperHost implements Host {
+
+        private final Handler mHandler = new Handler();
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void wakeUpAt(@NonNull Runnable runnable, long uptimeMillis) {
+            mHandler.removeCallbacks(runnable);
+            mHandler.postAtTime(runnable, uptimeMillis);
+        }
+
+    }
+
+    /**
+     * @return the scheduler of the looper of the current thread.
+     */
+    @NonNull
+    static TimeoutScheduler getInstance() {
+        TimeoutScheduler scheduler = sSchedulers.get();
+        if (scheduler == null) {
+            Check.getInstance().isNonNull(Looper.myLooper());
+            scheduler = new TimeoutScheduler(new LooperHost());
+            sSchedulers.set(scheduler);
+        }
+        return scheduler;
+    }
+
+    @NonNull
+    private final Host mHost;
+    @NonNull
+    private final Thread mThread;
+
+    @NonNull
+    private Timeout[] mHeap = new Timeout[8];
+    private int mSize;
+
+    /**
+     * The time of the scheduled wake-up, or {@code 0} if there's no one.
+     */
+    private long mWakeUpAt;
+
+    TimeoutScheduler(@NonNull Host host) {
+        mHost = host;
+        mThread = Thread.currentThread();
+    }
+
+    long uptimeMillis() {
+        return mHost.uptimeMillis();
+    }
+
+    void checkThread() {
+        Check.getInstance().isTrue(mThread == Thread.currentThread());
+    }
+
+    /**
+     * Schedules the timeout at its {@link Timeout#mTimeoutAt deadline}, or moves it
+     * to the new deadline if it is scheduled already.
+     */
+    void schedule(@NonNull Timeout timeout) {
+        int i = timeout.mHeapIndex;
+        if (i == -1) {
+            if (mSize == mHeap.length) mHeap = Arrays.copyOf(mHeap, mSize * 2);
+            i = mSize++;
+            mHeap[i] = timeout;
+            timeout.mHeapIndex = i;
+            siftUp(i);
+        } else if (!siftUp(i)) siftDown(i);
+        arm();
+    }
+
+    /**
+     * Removes the timeout from the schedule, if it's there. The wake-up stays,
+     * and re-arms itself when it comes.
+     */
+    void cancel(@NonNull Timeout timeout) {
+        final int i = timeout.mHeapIndex;
+        if (i == -1) return;
+        timeout.mHeapIndex = -1;
+
+        final int last = --mSize;
+        if (i != last) {
+            mHeap[i] = mHeap[last];
+            mHeap[i].mHeapIndex = i;
+            mHeap[last] = null;
+            if (!siftUp(i)) siftDown(i);
+        } else mHeap[last] = null;
+    }
+
+    /**
+     * @return the number of scheduled timeouts.
+     */
+    int getCount() {
+        return mSize;
+    }
+
+    /**
+     * Fires the expired timeouts.
+     */
+    @Override
+    public void run() {
+        mWakeUpAt = 0;
+        final long now = mHost.uptimeMillis();
+        while (mSize > 0 && mHeap[0].mTimeoutAt <= now) {
+            Timeout timeout = mHeap[0];
+            cancel(timeout);
+            timeout.onTimeout();
+        }
+        arm();
+    }
+
+    /**
+     * Makes sure the looper wakes up at the earliest deadline or earlier.
+     */
+    private void arm() {
+        if (mSize == 0) return;
+        final long at = mHeap[0].mTimeoutAt;
+        if (mWakeUpAt == 0 || at < mWakeUpAt) {
+            mWakeUpAt = at;
+            mHost.wakeUpAt(this, at);
+        }
+    }
+
+    //-- HEAP -----------------------------------------------------------------
+
+    private boolean siftUp(int i) {
+        final Timeout timeout = mHeap[i];
+        final int start = i;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            final Timeout p = mHeap[parent];
+            if (p.mTimeoutAt <= timeout.mTimeoutAt) break;
+            mHeap[i] = p;
+            p.mHeapIndex = i;
+            i = parent;
+        }
+        mHeap[i] = timeout;
+        timeout.mHeapIndex = i;
+        return i != start;
+    }
+
+    private void siftDown(int i) {
+        final Timeout timeout = mHeap[i];
+        final int half = mSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            final int right = child + 1;
+            if (right < mSize && mHeap[right].mTimeoutAt < mHeap[child].mTimeoutAt) {
+                child = right;
+            }
+            final Timeout c = mHeap[child];
+            if (timeout.mTimeoutAt <= c.mTimeoutAt) break;
+            mHeap[i] = c;
+            c.mHeapIndex = i;
+            i = child;
+        }
+        mHeap[i] = timeout;
+        timeout.mHeapIndex = i;
+    }
+
+}
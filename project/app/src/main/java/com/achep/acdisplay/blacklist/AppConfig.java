@@ -23,10 +23,15 @@ import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.achep.base.content.SharedList;
+import com.achep.base.content.SharedListLog;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * <b>Attention: its equality key is package name only!<b/>
  *
@@ -165,11 +170,13 @@ public class AppConfig {
     }
 
     /**
-     * Saves and restores AppConfig from and to shared preferences.
+     * Saves and restores AppConfig from and to shared preferences
+     * or binary log.
      *
      * @author Artem Chepurnoy
      */
-    static final class Saver extends SharedList.Saver<AppConfig> {
+    static final class Saver extends SharedList.Saver<AppConfig>
+            implements SharedListLog.Serializer<AppConfig> {
 
         private static final String KEY_PACKAGE = "package_name_";
         private static final String KEY_HIDDEN = "hidden_";
@@ -199,6 +206,28 @@ public class AppConfig {
             boolean ongoing = prefs.getBoolean(KEY_NON_CLEARABLE + position, DEFAULT_NON_CLEARABLE);
             return new AppConfig(pkg, hidden, ongoing);
         }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(@NonNull AppConfig ps, @NonNull DataOutput out) throws IOException {
+            out.writeUTF(ps.packageName);
+            out.writeBoolean(ps.isHidden());
+            out.writeBoolean(ps.isNonClearableEnabled());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @NonNull
+        @Override
+        public AppConfig read(@NonNull DataInput in) throws IOException {
+            String pkg = in.readUTF();
+            boolean hidden = in.readBoolean();
+            boolean ongoing = in.readBoolean();
+            return new AppConfig(pkg, hidden, ongoing);
+        }
     }
 
     /**
@@ -24,6 +24,9 @@ import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.achep.base.content.SharedList;
+import com.achep.base.content.SharedListLog;
+
+import java.util.HashMap;
 
 /**
  * The blacklist (also known as per-app-features.)
@@ -38,8 +41,29 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
 
     public static final String PREF_NAME = "blacklist";
 
+    /**
+     * @see AppConfig#isHidden()
+     * @see #getAppFlags(String)
+     */
+    public static final int FLAG_HIDDEN = 1;
+
+    /**
+     * @see AppConfig#isNonClearableEnabled()
+     * @see #getAppFlags(String)
+     */
+    public static final int FLAG_NON_CLEARABLE = 2;
+
     private static Blacklist sBlacklist;
 
+    /**
+     * The index of package name to packed flags of its config. Only
+     * non-default configs are stored here.
+     *
+     * @see #getAppFlags(String)
+     */
+    @NonNull
+    private final HashMap<String, Integer> mFlags = new HashMap<>();
+
     /**
      * Interface definition for a callback to be invoked
      * when a blacklist changed.
@@ -98,6 +122,12 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
     @Override
     public void init(@NonNull Context context) {
         super.init(context);
+
+        // Build the index of flags.
+        synchronized (mFlags) {
+            mFlags.clear();
+            for (AppConfig config : values()) updateFlags(config);
+        }
     }
 
     /**
@@ -109,6 +139,17 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
         return PREF_NAME;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    protected Storage<AppConfig> onCreateStorage() {
+        // Hundreds of apps may be here, so don't rewrite
+        // the whole list on each change.
+        return new SharedListLog<>(getPreferencesFileName(), new AppConfig.Saver());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -165,16 +206,46 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
 
     @NonNull
     public AppConfig fill(@NonNull AppConfig config) {
-        for (AppConfig c : values()) {
-            if (c.equals(config)) {
-                AppConfig.copy(c, config);
-                return config;
-            }
-        }
-        AppConfig.reset(config);
+        final int flags = getAppFlags(config.packageName);
+        config.setHidden((flags & FLAG_HIDDEN) != 0);
+        config.setNonClearableEnabled((flags & FLAG_NON_CLEARABLE) != 0);
         return config;
     }
 
+    /**
+     * Returns packed flags of the config of given app. Unlike the
+     * {@link #getAppConfig(String)} this doesn't create any objects, so it's good
+     * to be used in a hot path. This is safe to call from any thread.
+     *
+     * @param packageName The package name of need application.
+     * @return the flags of app's config.
+     * @see #FLAG_HIDDEN
+     * @see #FLAG_NON_CLEARABLE
+     */
+    public int getAppFlags(@NonNull String packageName) {
+        final Integer flags;
+        synchronized (mFlags) {
+            flags = mFlags.get(packageName);
+        }
+        return flags != null ? flags : 0;
+    }
+
+    /**
+     * Puts the flags of given config to the {@link #mFlags index},
+     * or removes it if the config is default.
+     */
+    private void updateFlags(@NonNull AppConfig config) {
+        int flags = 0;
+        if (config.isHidden()) flags |= FLAG_HIDDEN;
+        if (config.isNonClearableEnabled()) flags |= FLAG_NON_CLEARABLE;
+
+        synchronized (mFlags) {
+            if (flags == 0) {
+                mFlags.remove(config.packageName);
+            } else mFlags.put(config.packageName, flags);
+        }
+    }
+
     //-- BULL SHIT PROTECTION -------------------------------------------------
 
     /**
@@ -221,6 +292,10 @@ public final class Blacklist extends SharedList<AppConfig, AppConfig.Saver> {
             old = new AppConfig(object.packageName);
         }
 
+        // Update the index before notifying anyone, so
+        // listeners get the actual flags.
+        updateFlags(object);
+
         // Notify all listeners
         super.notifyOnPut(object, old, l);
     }
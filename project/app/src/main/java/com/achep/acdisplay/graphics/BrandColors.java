@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.graphics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.graphics.Palette;
+import android.util.Log;
+
+import com.achep.base.async.Worker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The cache of the brand colors of apps. The brand color is the vibrant color
+ * of app's icon; it's per-package and practically never changes, so it's
+ * generated once on the {@link Worker} and stored on disk until
+ * the package is {@link #invalidate(Context, String) replaced}.
+ *
+ * @author Artem Chepurnoy
+ * @see com.achep.acdisplay.receiver.PackageReceiver
+ */
+public final class BrandColors {
+
+    private static final String TAG = "BrandColors";
+
+    private static final String PREF_NAME = "brand_colors";
+
+    /**
+     * The color of apps without the vibrant color.
+     */
+    public static final int COLOR_DEFAULT = Color.WHITE;
+
+    /**
+     * The size of the downsampled app's icon. This is enough
+     * to find the vibrant color.
+     */
+    private static final int SAMPLE_SIZE = 48;
+
+    private static BrandColors sBrandColors;
+
+    @NonNull
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final HashMap<String, Integer> mColors = new HashMap<>();
+    @NonNull
+    private final HashMap<String, Request> mPending = new HashMap<>();
+
+    /**
+     * The packages invalidated while the colors are loading, so
+     * the loaded colors don't bring their old colors back.
+     */
+    @NonNull
+    private final HashSet<String> mInvalidated = new HashSet<>();
+
+    /**
+     * The bitmap to draw icons to.
+     *
+     * @see #generate(Context, String)
+     */
+    private Bitmap mSample;
+    @NonNull
+    private final Object mSampleLock = new Object();
+    private boolean mLoaded;
+    private boolean mLoading;
+
+    /**
+     * The counter of requests. A request is current while it's in
+     * the {@link #mPending pending} requests with the same generation.
+     */
+    private int mGeneration;
+
+    /**
+     * Interface definition for a callback to be invoked
+     * when the brand color is generated.
+     */
+    public interface OnColorGeneratedListener {
+
+        /**
+         * Called on the main thread.
+         */
+        void onColorGenerated(@NonNull String packageName, int color);
+
+    }
+
+    /**
+     * The pending request of the brand color.
+     */
+    private static final class Request {
+
+        final int generation;
+        @NonNull
+        final ArrayList<OnColorGeneratedListener> listeners = new ArrayList<>(2);
+
+        Request(int generation) {
+            this.generation = generation;
+        }
+
+    }
+
+    @NonNull
+    public static synchronized BrandColors getInstance() {
+        if (sBrandColors == null) {
+            sBrandColors = new BrandColors();
+        }
+        return sBrandColors;
+    }
+
+    private BrandColors() { /* empty */ }
+
+    @NonNull
+    private SharedPreferences getSharedPreferences(@NonNull Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the cached brand color of the package, or {@link #COLOR_DEFAULT} and starts
+     * generating it, if it's not cached yet.
+     *
+     * @param listener the listener to be notified when the color is generated, if it's
+     *                 not cached yet.
+     */
+    public int getColor(@NonNull Context context, @NonNull String packageName,
+                        @Nullable OnColorGeneratedListener listener) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (this) {
+            Integer color = mColors.get(packageName);
+            if (color != null) return color;
+
+            Request request = mPending.get(packageName);
+            if (request == null) {
+                request = new Request(++mGeneration);
+                mPending.put(packageName, request);
+                if (mLoaded) {
+                    generateAsync(appContext, packageName, request.generation);
+                } else loadAsync(appContext);
+            }
+            if (listener != null) request.listeners.add(listener);
+        }
+        return COLOR_DEFAULT;
+    }
+
+    /**
+     * Drops the cached color of the package. This should be
+     * called when the package is replaced or removed.
+     */
+    public void invalidate(@NonNull Context context, @NonNull String packageName) {
+        synchronized (this) {
+            // Forget the pending request, so the colors being generated now
+            // are not written back.
+            final boolean pending = mPending.remove(packageName) != null;
+            if (mLoading) mInvalidated.add(packageName);
+            if (mColors.remove(packageName) == null && !pending && mLoaded) return;
+            getSharedPreferences(context).edit().remove(packageName).apply();
+        }
+        if (DEBUG) Log.d(TAG, "Invalidated the brand color of " + packageName);
+    }
+
+    /**
+     * @return the current request of the package, or {@code null}
+     * if given generation is outdated.
+     */
+    @Nullable
+    private Request getRequest(@NonNull String packageName, int generation) {
+        Request request = mPending.get(packageName);
+        return request != null && request.generation == generation ? request : null;
+    }
+
+    /**
+     * Loads the colors from disk on the {@link Worker}, and then
+     * resolves the pending requests.
+     */
+    private void loadAsync(@NonNull final Context context) {
+        if (mLoading) return;
+        mLoading = true;
+
+        Worker.getInstance().submit(null, Worker.PRIORITY_HIGH, new Worker.Job<Void>() {
+
+            @Override
+            protected Void doInBackground() {
+                Map<String, ?> map = getSharedPreferences(context).getAll();
+                synchronized (BrandColors.this) {
+                    for (Map.Entry<String, ?> entry : map.entrySet()) {
+                        final String packageName = entry.getKey();
+                        if (entry.getValue() instanceof Integer
+                                && !mColors.containsKey(packageName)
+                                && !mInvalidated.contains(packageName)) {
+                            mColors.put(packageName, (Integer) entry.getValue());
+                        }
+                    }
+                    mInvalidated.clear();
+                    mLoading = false;
+                    mLoaded = true;
+
+                    for (Map.Entry<String, Request> entry : mPending.entrySet()) {
+                        final String packageName = entry.getKey();
+                        final Request request = entry.getValue();
+                        Integer color = mColors.get(packageName);
+                        if (color != null) {
+                            deliverAsync(packageName, request.generation, color);
+                        } else generateAsync(context, packageName, request.generation);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            protected void onCancelled() {
+                // The queue is full or the loading has failed: drop
+                // the pending requests and try again next time.
+                synchronized (BrandColors.this) {
+                    if (mLoaded) return;
+                    mInvalidated.clear();
+                    mLoading = false;
+                    mPending.clear();
+                }
+            }
+
+        });
+    }
+
+    private void generateAsync(@NonNull final Context context, @NonNull final String packageName,
+                               final int generation) {
+        Worker.getInstance().submit(packageName, Worker.PRIORITY_LOW, new Worker.Job<Integer>() {
+
+            @Override
+            protected Integer doInBackground() {
+                final int color = generate(context, packageName);
+                synchronized (BrandColors.this) {
+                    // Do not write back the color of
+                    // the invalidated package.
+                    if (getRequest(packageName, generation) != null) {
+                        mColors.put(packageName, color);
+                        getSharedPreferences(context).edit().putInt(packageName, color).apply();
+                    }
+                }
+                return color;
+            }
+
+            @Override
+            protected void onPostExecute(Integer color) {
+                deliver(packageName, generation, color);
+            }
+
+            @Override
+            protected void onCancelled() {
+                // The queue is full: try again next time.
+                synchronized (BrandColors.this) {
+                    if (getRequest(packageName, generation) != null) {
+                        mPending.remove(packageName);
+                    }
+                }
+            }
+
+        });
+    }
+
+    private void deliverAsync(@NonNull final String packageName, final int generation,
+                              final int color) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                deliver(packageName, generation, color);
+            }
+        });
+    }
+
+    /**
+     * Notifies the listeners of the request, if it's still current.
+     */
+    private void deliver(@NonNull String packageName, int generation, int color) {
+        final Request request;
+        synchronized (this) {
+            request = getRequest(packageName, generation);
+            if (request == null) return;
+            mPending.remove(packageName);
+        }
+        for (OnColorGeneratedListener l : request.listeners) {
+            l.onColorGenerated(packageName, color);
+        }
+    }
+
+    /**
+     * Generates the brand color from the downsampled app's icon.
+     */
+    private int generate(@NonNull Context context, @NonNull String packageName) {
+        final Drawable appIcon;
+        try {
+            appIcon = context.getPackageManager().getApplicationIcon(packageName);
+        } catch (PackageManager.NameNotFoundException e) {
+            return COLOR_DEFAULT;
+        }
+
+        final int color;
+        synchronized (mSampleLock) {
+            if (mSample == null) {
+                mSample = Bitmap.createBitmap(SAMPLE_SIZE, SAMPLE_SIZE, Bitmap.Config.ARGB_8888);
+            } else mSample.eraseColor(Color.TRANSPARENT);
+            appIcon.setBounds(0, 0, SAMPLE_SIZE, SAMPLE_SIZE);
+            appIcon.draw(new Canvas(mSample));
+            color = Palette.generate(mSample).getVibrantColor(COLOR_DEFAULT);
+        }
+
+        if (DEBUG) Log.d(TAG, "Generated the brand color of " + packageName
+                + ": " + Integer.toHexString(color));
+        return color;
+    }
+
+}
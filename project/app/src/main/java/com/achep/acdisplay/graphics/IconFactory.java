@@ -18,6 +18,7 @@
  */
 package com.achep.acdisplay.graphics;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
@@ -26,14 +27,19 @@ import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
-import android.support.v4.os.AsyncTaskCompat;
+import android.support.annotation.Nullable;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.achep.acdisplay.notifications.NotificationUtils;
 import com.achep.acdisplay.notifications.OpenNotification;
-import com.achep.base.async.AsyncTask;
+import com.achep.base.async.Worker;
+import com.achep.base.interfaces.IOnLowMemory;
 import com.achep.headsup.R;
 
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
 import static com.achep.base.Build.DEBUG;
 
 /**
@@ -45,19 +51,165 @@ public class IconFactory {
 
     private static final String TAG = "IconFactory";
 
+    /**
+     * The process-wide cache of generated icons.
+     *
+     * @see #getCache()
+     */
+    @NonNull
+    private static final Cache sCache = new Cache((int) Math.min(
+            Runtime.getRuntime().maxMemory() / 32,
+            Cache.MAX_SIZE));
+
+    /**
+     * The size-bounded LRU cache of generated icons. Icons are shared between
+     * notifications, so they must never be recycled.
+     *
+     * @author Artem Chepurnoy
+     * @see #getCache()
+     */
+    public static final class Cache extends LruCache<Cache.Key, Bitmap> implements IOnLowMemory {
+
+        /**
+         * The maximum size of the cache in bytes.
+         */
+        private static final int MAX_SIZE = 2 * 1024 * 1024; // 2 MiB
+
+        /**
+         * The key of icon: the package name, the resource id of icon, the
+         * size of icon and the density of screen.
+         */
+        static final class Key {
+
+            @NonNull
+            private final String packageName;
+            private final int iconRes;
+            private final int size;
+            private final int density;
+
+            Key(@NonNull String packageName, int iconRes, int size, int density) {
+                this.packageName = packageName;
+                this.iconRes = iconRes;
+                this.size = size;
+                this.density = density;
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public int hashCode() {
+                return new HashCodeBuilder(5, 31)
+                        .append(packageName)
+                        .append(iconRes)
+                        .append(size)
+                        .append(density)
+                        .toHashCode();
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public boolean equals(Object o) {
+                if (o == this)
+                    return true;
+                if (!(o instanceof Key))
+                    return false;
+
+                Key key = (Key) o;
+                return new EqualsBuilder()
+                        .append(packageName, key.packageName)
+                        .append(iconRes, key.iconRes)
+                        .append(size, key.size)
+                        .append(density, key.density)
+                        .isEquals();
+            }
+
+        }
+
+        private Cache(int maxSize) {
+            super(maxSize);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getByteCount();
+        }
+
+        /**
+         * Evicts all icons of given package, for example
+         * after it has been updated.
+         */
+        public void invalidate(@NonNull String packageName) {
+            for (Key key : snapshot().keySet()) {
+                if (key.packageName.equals(packageName)) remove(key);
+            }
+        }
+
+        /**
+         * Evicts all icons.
+         */
+        @Override
+        public void onLowMemory() {
+            evictAll();
+        }
+
+        /**
+         * Evicts some or all of the icons, depending on the level.
+         *
+         * @see android.content.ComponentCallbacks2#onTrimMemory(int)
+         */
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+                evictAll();
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                trimToSize(maxSize() / 2);
+            }
+        }
+
+    }
+
+    /**
+     * @return the process-wide cache of icons. Use its {@link Cache#hitCount()},
+     * {@link Cache#missCount()} and {@link Cache#evictionCount()} for tuning.
+     */
+    @NonNull
+    public static Cache getCache() {
+        return sCache;
+    }
+
     public interface IconAsyncListener {
+
         void onGenerated(@NonNull Bitmap bitmap);
+
+        /**
+         * Called when the job is rejected, superseded or failed,
+         * so the icon may be requested again.
+         */
+        void onCancelled();
+
     }
 
+    /**
+     * Generates the icon of the notification on the {@link Worker}. A newer
+     * request for the same notification supersedes this one.
+     *
+     * @see #generate(Context, OpenNotification)
+     */
     @NonNull
-    public static AsyncTask<Void, Void, Bitmap> generateAsync(final @NonNull Context context,
-                                                              final @NonNull OpenNotification notification,
-                                                              final @NonNull IconAsyncListener listener) {
-        return (AsyncTask<Void, Void, Bitmap>) AsyncTaskCompat.executeParallel(
-                new AsyncTask<Void, Void, Bitmap>() {
+    public static Worker.Job<Bitmap> generateAsync(final @NonNull Context context,
+                                                   final @NonNull OpenNotification notification,
+                                                   final @NonNull IconAsyncListener listener) {
+        return Worker.getInstance().submit(
+                notification.getIdentityKey(), Worker.PRIORITY_NORMAL,
+                new Worker.Job<Bitmap>() {
 
                     @Override
-                    protected Bitmap doInBackground(Void... params) {
+                    protected Bitmap doInBackground() {
                         final long start = SystemClock.elapsedRealtime();
 
                         Bitmap output = generate(context, notification);
@@ -74,22 +226,56 @@ public class IconFactory {
 
                     @Override
                     protected void onPostExecute(Bitmap bitmap) {
-                        super.onPostExecute(bitmap);
                         listener.onGenerated(bitmap);
                     }
 
+                    @Override
+                    protected void onCancelled() {
+                        listener.onCancelled();
+                    }
+
                 });
     }
 
+    /**
+     * Returns the icon of the notification from the {@link #getCache() cache},
+     * or generates it. The icon is shared, so do not recycle it.
+     */
     public static Bitmap generate(final @NonNull Context context,
                                   final @NonNull OpenNotification notification) {
         Resources res = context.getResources();
 
-        int iconRes = notification.getNotification().icon;
+        final int iconRes = notification.getNotification().icon;
+        final int size = res.getDimensionPixelSize(R.dimen.notification_icon_size);
+        Cache.Key key = createKey(res, notification, iconRes, size);
+        Bitmap icon = sCache.get(key);
+        if (icon != null) return icon;
+
         Drawable drawable = NotificationUtils.getDrawable(context, notification, iconRes);
+        icon = drawable == null ? createEmptyIcon(res, size) : createIcon(drawable, size);
+        sCache.put(key, icon);
+        return icon;
+    }
 
+    /**
+     * @return the icon of the notification from the {@link #getCache() cache},
+     * or {@code null} if it's not generated yet.
+     */
+    @Nullable
+    public static Bitmap peek(final @NonNull Context context,
+                              final @NonNull OpenNotification notification) {
+        Resources res = context.getResources();
+        final int iconRes = notification.getNotification().icon;
         final int size = res.getDimensionPixelSize(R.dimen.notification_icon_size);
-        return drawable == null ? createEmptyIcon(res, size) : createIcon(drawable, size);
+        return sCache.get(createKey(res, notification, iconRes, size));
+    }
+
+    @NonNull
+    private static Cache.Key createKey(@NonNull Resources res,
+                                       @NonNull OpenNotification notification,
+                                       int iconRes, int size) {
+        final int density = res.getDisplayMetrics().densityDpi;
+        return new Cache.Key(notification.getPackageName(), iconRes, size, density);
     }
 
     // TODO: Automatically scale the icon.
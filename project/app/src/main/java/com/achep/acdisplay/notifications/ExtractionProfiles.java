@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The learned per-package profiles of the {@link Extractor}. Apps that don't put
+ * texts to the extras of notifications use the same layout over and over, so once
+ * the heuristics have found which text view of the layout is the title and which
+ * views never have the message, the next notifications of the app are read from
+ * the views directly.
+ * <p/>
+ * Profiles are stored on disk until the package is {@link #invalidate(Context, String)
+ * replaced}.
+ *
+ * @author Artem Chepurnoy
+ * @see com.achep.acdisplay.receiver.PackageReceiver
+ */
+public final class ExtractionProfiles {
+
+    private static final String TAG = "ExtractionProfiles";
+
+    private static final String PREF_NAME = "extraction_profiles_v2";
+
+    private static ExtractionProfiles sProfiles;
+
+    @NonNull
+    private final HashMap<String, Profile> mProfiles = new HashMap<>();
+    private boolean mLoaded;
+
+    /**
+     * The profile of an app which puts the texts to the views only.
+     *
+     * @author Artem Chepurnoy
+     */
+    static final class Profile {
+
+        /**
+         * The id of the layout of notification's remote views.
+         */
+        final int layoutId;
+
+        /**
+         * The index of the title view in the {@link RemoteViewsCache.Layout#textViews}.
+         */
+        final int title;
+
+        /**
+         * The sorted indices of the views in the {@link RemoteViewsCache.Layout#textViews},
+         * that never have the message: subtexts, clocks etc. All other visible views
+         * have the message.
+         */
+        @NonNull
+        final int[] excluded;
+
+        Profile(int layoutId, int title, @NonNull int[] excluded) {
+            this.layoutId = layoutId;
+            this.title = title;
+            this.excluded = excluded;
+        }
+
+        /**
+         * @return {@code true} if the view at given index never has
+         * the message, {@code false} otherwise.
+         */
+        boolean isExcluded(int index) {
+            return Arrays.binarySearch(excluded, index) >= 0;
+        }
+
+        /**
+         * @return the profile in the form of {@code layoutId:title:excluded,excluded}.
+         * @see #fromString(String)
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(layoutId).append(':').append(title).append(':');
+            for (int i = 0; i < excluded.length; i++) {
+                if (i != 0) sb.append(',');
+                sb.append(excluded[i]);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return the profile parsed from the {@link #toString() string},
+         * or {@code null} if the string is malformed.
+         */
+        @Nullable
+        static Profile fromString(@NonNull String str) {
+            String[] parts = str.split(":", -1);
+            if (parts.length != 3) return null;
+            try {
+                String[] excludedRaw = parts[2].isEmpty() ? new String[0] : parts[2].split(",");
+                int[] excluded = new int[excludedRaw.length];
+                for (int i = 0; i < excluded.length; i++) {
+                    excluded[i] = Integer.parseInt(excludedRaw[i]);
+                }
+                Arrays.sort(excluded);
+                return new Profile(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), excluded);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+    }
+
+    @NonNull
+    public static synchronized ExtractionProfiles getInstance() {
+        if (sProfiles == null) {
+            sProfiles = new ExtractionProfiles();
+        }
+        return sProfiles;
+    }
+
+    private ExtractionProfiles() { /* empty */ }
+
+    @NonNull
+    private SharedPreferences getSharedPreferences(@NonNull Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Loads the profiles from disk, if not loaded yet.
+     */
+    private void ensureLoaded(@NonNull Context context) {
+        if (mLoaded) return;
+        mLoaded = true;
+
+        for (Map.Entry<String, ?> entry : getSharedPreferences(context).getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                Profile profile = Profile.fromString((String) entry.getValue());
+                if (profile != null) mProfiles.put(entry.getKey(), profile);
+            }
+        }
+    }
+
+    /**
+     * @return the learned profile of the package, or {@code null} if there's no one.
+     */
+    @Nullable
+    synchronized Profile get(@NonNull Context context, @NonNull String packageName) {
+        ensureLoaded(context);
+        return mProfiles.get(packageName);
+    }
+
+    /**
+     * Remembers the profile of the package.
+     */
+    void put(@NonNull Context context, @NonNull String packageName, @NonNull Profile profile) {
+        synchronized (this) {
+            ensureLoaded(context);
+            Profile old = mProfiles.put(packageName, profile);
+            if (old != null && old.toString().equals(profile.toString())) return;
+        }
+        getSharedPreferences(context).edit().putString(packageName, profile.toString()).apply();
+        if (DEBUG) Log.d(TAG, "Learned the profile of " + packageName + ": " + profile);
+    }
+
+    /**
+     * Forgets the profile of the package. This should be
+     * called when the package is replaced or removed.
+     */
+    public void invalidate(@NonNull Context context, @NonNull String packageName) {
+        synchronized (this) {
+            ensureLoaded(context);
+            if (mProfiles.remove(packageName) == null) return;
+        }
+        getSharedPreferences(context).edit().remove(packageName).apply();
+        if (DEBUG) Log.d(TAG, "Invalidated the profile of " + packageName);
+    }
+
+}
@@ -26,17 +26,17 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
-import android.view.ViewGroup;
 import android.widget.RemoteViews;
 import android.widget.TextView;
 
 import com.achep.base.Device;
+import com.achep.base.utils.CsUtils;
 import com.achep.headsup.R;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Created by Artem on 04.03.14.
@@ -45,31 +45,45 @@ final class Extractor {
 
     private static final String TAG = "Extractor";
 
+    private static final String REGEX_CLOCK = "^\\d{1,2}:\\d{1,2}(\\s?\\w{2}|)$";
+
     /**
-     * Removes all kinds of multiple spaces from given string.
+     * Loads the texts from the extras of the notification. This is cheap, unlike
+     * {@link #loadTextsFromView(Context, OpenNotification) loading from the views}.
+     *
+     * @return {@code true} if the texts are loaded, {@code false} if they must be
+     * loaded from the views.
+     * @see #loadTextsFromView(Context, OpenNotification)
      */
-    @Nullable
-    private static String removeSpaces(@Nullable CharSequence cs) {
-        if (cs == null) return null;
-        String string = cs instanceof String
-                ? (String) cs : cs.toString();
-        return string
-                .replaceAll("(\\s+$|^\\s+)", "")
-                .replaceAll("\n+", "\n");
+    public boolean loadTexts(@NonNull Context context, @NonNull OpenNotification n) {
+        final Bundle extras = getExtras(n.getNotification());
+        if (extras != null) loadFromExtras(n, extras);
+        return hasTexts(n);
     }
 
-    @SuppressLint("InlinedApi")
-    public void loadTexts(@NonNull Context context, @NonNull OpenNotification n) {
-        final Notification notification = n.getNotification();
-        final Bundle extras = getExtras(notification);
+    /**
+     * Loads the texts from the views of the notification, if the extras have not
+     * got any. This is heavy: it inflates the layout of notification, if it's not
+     * pooled yet.
+     *
+     * @see #loadTexts(Context, OpenNotification)
+     */
+    public void loadTextsFromView(@NonNull Context context, @NonNull OpenNotification n) {
+        // Try the learned views first, and fall back to the heuristics,
+        // which learn the profile again. A notification that fits neither
+        // does not drop the profile.
+        final ExtractionProfiles.Profile profile = ExtractionProfiles.getInstance()
+                .get(context, n.getPackageName());
+        if (profile == null || !loadFromView(context, n, profile)) {
+            loadFromView(context, n, null);
+        }
+    }
 
-        if (extras != null) loadFromExtras(n, extras);
-        if (TextUtils.isEmpty(n.titleText)
+    private static boolean hasTexts(@NonNull OpenNotification n) {
+        return !(TextUtils.isEmpty(n.titleText)
                 && TextUtils.isEmpty(n.titleBigText)
                 && TextUtils.isEmpty(n.messageText)
-                && n.messageTextLines == null) {
-            loadFromView(context, n);
-        }
+                && n.messageTextLines == null);
     }
 
     /**
@@ -93,24 +107,32 @@ final class Extractor {
         }
     }
 
+    /**
+     * {@link CsUtils#normalize(CharSequence) Normalizes} the lines and filters
+     * the empty ones out, keeping the spans. If there's nothing to change, given
+     * array is returned as is, so this doesn't allocate anything.
+     *
+     * @return the normalized lines, or {@code null} if there are no lines.
+     */
     @Nullable
-    private CharSequence[] doIt(@Nullable CharSequence[] lines) {
-        if (lines != null) {
-            // Filter empty lines.
-            ArrayList<CharSequence> list = new ArrayList<>();
-            for (CharSequence msg : lines) {
-                msg = removeSpaces(msg);
-                if (!TextUtils.isEmpty(msg)) {
-                    list.add(msg);
-                }
-            }
-
-            // Create new array.
-            if (list.size() > 0) {
-                return list.toArray(new CharSequence[list.size()]);
+    static CharSequence[] doIt(@Nullable CharSequence[] lines) {
+        if (lines == null) return null;
+
+        CharSequence[] result = lines;
+        int n = 0;
+        for (int i = 0; i < lines.length; i++) {
+            final CharSequence line = lines[i] == null ? null : CsUtils.normalize(lines[i]);
+            final boolean empty = line == null || line.length() == 0;
+            if (result == lines && (empty || line != lines[i])) {
+                // Copy-on-write: all previous lines are kept as is.
+                result = new CharSequence[lines.length];
+                System.arraycopy(lines, 0, result, 0, n);
             }
+            if (!empty) result[n++] = line;
         }
-        return null;
+
+        if (n == 0) return null;
+        return n == result.length ? result : Arrays.copyOf(result, n);
     }
 
     //-- LOADING FROM EXTRAS --------------------------------------------------
@@ -136,49 +158,146 @@ final class Extractor {
 
     //-- LOADING FROM VIEWS ---------------------------------------------------
 
-    private void loadFromView(@NonNull Context context, @NonNull OpenNotification n) {
-        ViewGroup view;
-        {
-            final Context contextNotify = NotificationUtils.createContext(context, n);
-            if (contextNotify == null) return;
-
-            final Notification notification = n.getNotification();
-            final RemoteViews rvs = notification.bigContentView == null
-                    ? notification.contentView
-                    : notification.bigContentView;
-
-            // Try to load the view from remote views.
-            LayoutInflater inflater = (LayoutInflater) contextNotify.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            try {
-                view = (ViewGroup) inflater.inflate(rvs.getLayoutId(), null);
-                rvs.reapply(contextNotify, view);
-            } catch (Exception e) {
-                return;
+    /**
+     * Loads the title and the message from the views of the notification.
+     *
+     * @param profile the learned profile of the app, or {@code null} to
+     *                find the title and the message using the heuristics.
+     * @return {@code true} if any text is loaded, {@code false} otherwise.
+     */
+    private boolean loadFromView(@NonNull Context context, @NonNull OpenNotification n,
+                                 @Nullable ExtractionProfiles.Profile profile) {
+        final Notification notification = n.getNotification();
+        final RemoteViews rvs = notification.bigContentView == null
+                ? notification.contentView
+                : notification.bigContentView;
+        if (rvs == null || profile != null && profile.layoutId != rvs.getLayoutId()) {
+            return false;
+        }
+
+        // Reapply the remote views to a pooled layout, or to the
+        // newly inflated one.
+        final RemoteViewsCache cache = RemoteViewsCache.getInstance();
+        final String packageName = n.getPackageName();
+        final int layoutId = rvs.getLayoutId();
+        RemoteViewsCache.Layout layout = cache.obtain(packageName, layoutId);
+        try {
+            if (layout == null) {
+                final Context contextNotify = NotificationUtils.createContext(context, n);
+                if (contextNotify == null) return false;
+                layout = RemoteViewsCache.inflate(contextNotify, packageName, layoutId);
+            }
+            rvs.reapply(layout.context, layout.view);
+        } catch (Exception e) {
+            return false; // the layout is dropped
+        }
+
+        final boolean loaded = profile != null
+                ? loadFromTextViews(n, layout, profile)
+                : loadFromTextViews(context, n, layout);
+        layout.candidates.clear();
+        cache.recycle(layout);
+        return loaded;
+    }
+
+    /**
+     * Reads the title from the view of the {@link ExtractionProfiles.Profile profile},
+     * and the message from all other visible views except the excluded ones.
+     */
+    private boolean loadFromTextViews(@NonNull OpenNotification n,
+                                      @NonNull RemoteViewsCache.Layout layout,
+                                      @NonNull ExtractionProfiles.Profile profile) {
+        final TextView[] textViews = layout.textViews;
+        if (profile.title >= textViews.length) return false;
+
+        ArrayList<TextView> candidates = layout.candidates;
+        candidates.clear();
+        for (int i = 0; i < textViews.length; i++) {
+            if (i != profile.title && !profile.isExcluded(i)
+                    && textViews[i].getVisibility() == View.VISIBLE) {
+                candidates.add(textViews[i]);
             }
         }
+        removeActionViews(n.getActions(), candidates);
 
-        ArrayList<TextView> textViews = new RecursiveFinder<>(TextView.class).expand(view);
+        CharSequence title = textViews[profile.title].getText();
+        CharSequence[] messages = new CharSequence[candidates.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = candidates.get(i).getText();
+        }
+        messages = doIt(messages);
+        if (TextUtils.isEmpty(title) && messages == null) {
+            return false;
+        }
+
+        n.titleText = title;
+        n.messageTextLines = messages;
+        return true;
+    }
+
+    /**
+     * Finds the title and the message in the views using the heuristics, and
+     * learns the {@link ExtractionProfiles.Profile profile} of the app.
+     */
+    private boolean loadFromTextViews(@NonNull Context context, @NonNull OpenNotification n,
+                                      @NonNull RemoteViewsCache.Layout layout) {
+        ArrayList<TextView> textViews = layout.resetCandidates();
         removeClickableViews(textViews);
         removeSubtextViews(context, textViews);
         removeActionViews(n.getActions(), textViews);
 
         // No views
         if (textViews.size() == 0)
-            return;
+            return false;
 
         TextView title = findTitleTextView(textViews);
         textViews.remove(title); // no need of title view anymore
         n.titleText = title.getText();
 
-        // No views
-        if (textViews.size() == 0)
-            return;
-
         // Pull all other texts and merge them.
         int length = textViews.size();
         CharSequence[] messages = new CharSequence[length];
-        for (int i = 0; i < length; i++) messages[i] = textViews.get(i).getText();
-        n.messageTextLines = doIt(messages);
+        for (int i = 0; i < length; i++) {
+            messages[i] = textViews.get(i).getText();
+        }
+        if (length > 0) n.messageTextLines = doIt(messages);
+
+        // Remember the title and the views which never have the message. Empty
+        // and hidden views are not excluded: they may have it next time.
+        final float subtextSize = context.getResources().getDimension(R.dimen.notification_subtext_size);
+        int[] excluded = new int[layout.textViews.length];
+        int count = 0;
+        for (int i = 0; i < layout.textViews.length; i++) {
+            TextView textView = layout.textViews[i];
+            if (textView != title && !textViews.contains(textView)
+                    && isNeverMessage(textView, subtextSize)) {
+                excluded[count++] = i;
+            }
+        }
+
+        ExtractionProfiles.Profile profile = new ExtractionProfiles.Profile(layout.layoutId,
+                indexOf(layout.textViews, title), Arrays.copyOf(excluded, count));
+        ExtractionProfiles.getInstance().put(context, n.getPackageName(), profile);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the view is a clickable view, a subtext or
+     * a clock, {@code false} otherwise.
+     * @see #removeClickableViews(java.util.ArrayList)
+     * @see #removeSubtextViews(Context, java.util.ArrayList)
+     */
+    private static boolean isNeverMessage(@NonNull TextView textView, float subtextSize) {
+        return textView.getVisibility() == View.VISIBLE && textView.isClickable()
+                || textView.getTextSize() == subtextSize
+                || textView.getText().toString().matches(REGEX_CLOCK);
+    }
+
+    private static int indexOf(@NonNull TextView[] textViews, @NonNull TextView textView) {
+        for (int i = 0; i < textViews.length; i++) {
+            if (textViews[i] == textView) return i;
+        }
+        throw new IllegalArgumentException();
     }
 
     private void removeActionViews(@Nullable Action[] actions,
@@ -218,7 +337,7 @@ final class Extractor {
                     // empty textviews
                     || text.matches("^(\\s*|)$")
                     // clock textviews
-                    || text.matches("^\\d{1,2}:\\d{1,2}(\\s?\\w{2}|)$")) {
+                    || text.matches(REGEX_CLOCK)) {
                 textViews.remove(i);
             }
         }
@@ -238,35 +357,4 @@ final class Extractor {
         return largest;
     }
 
-    private static class RecursiveFinder<T extends View> {
-
-        private final ArrayList<T> list;
-        private final Class<T> clazz;
-
-        public RecursiveFinder(@NonNull Class<T> clazz) {
-            this.list = new ArrayList<>();
-            this.clazz = clazz;
-        }
-
-        public ArrayList<T> expand(@NonNull ViewGroup viewGroup) {
-            int offset = 0;
-            int childCount = viewGroup.getChildCount();
-            for (int i = 0; i < childCount; i++) {
-                View child = viewGroup.getChildAt(i + offset);
-
-                if (child == null) {
-                    continue;
-                }
-
-                if (clazz.isAssignableFrom(child.getClass())) {
-                    //noinspection unchecked
-                    list.add((T) child);
-                } else if (child instanceof ViewGroup) {
-                    expand((ViewGroup) child);
-                }
-            }
-            return list;
-        }
-    }
-
 }
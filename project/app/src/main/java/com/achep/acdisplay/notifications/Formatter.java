@@ -73,6 +73,7 @@ public class Formatter {
         boolean secure = km.isKeyguardSecure() && km.isKeyguardLocked();
         boolean hiddenContent = secure && hasHiddenContent();
         boolean hiddenActions = secure && hasHiddenActions();
+        notification.ensureTextsFormatted();
 
         // Get the title
         CharSequence title = NullUtils.whileNotNull(
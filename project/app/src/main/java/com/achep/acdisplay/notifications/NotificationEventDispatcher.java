@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+
+import com.achep.base.tests.Check;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import static com.achep.acdisplay.notifications.NotificationPresenter.EVENT_BATH;
+import static com.achep.acdisplay.notifications.NotificationPresenter.EVENT_CHANGED;
+import static com.achep.acdisplay.notifications.NotificationPresenter.EVENT_CHANGED_SPAM;
+import static com.achep.acdisplay.notifications.NotificationPresenter.EVENT_POSTED;
+import static com.achep.acdisplay.notifications.NotificationPresenter.EVENT_REMOVED;
+
+/**
+ * Collects the events of {@link NotificationPresenter} and sends them
+ * to the listeners in batches: once per frame or once per
+ * {@link #setWindow(int) window}. The events of the same notification
+ * are merged, so a listener gets only the final state of it.
+ *
+ * @author Artem Chepurnoy
+ * @see OpenNotification#getIdentityKey()
+ */
+public final class NotificationEventDispatcher {
+
+    private static final String TAG = "NotificationDispatcher";
+
+    /**
+     * Dispatch the events on the next frame.
+     *
+     * @see #setWindow(int)
+     */
+    public static final int WINDOW_FRAME = 0;
+
+    /**
+     * The event of posting and removing the same notification,
+     * that should not be sent at all.
+     */
+    private static final int EVENT_NONE = -1;
+
+    /**
+     * Interface definition for a callback to be invoked
+     * when a batch of events is ready to be sent.
+     */
+    interface Callback {
+
+        /**
+         * @param changes the batch of merged events in the order of appearance.
+         */
+        void onDispatch(@NonNull ArrayList<NotificationListChange> changes);
+
+    }
+
+    @NonNull
+    private final Callback mCallback;
+    @NonNull
+    private final Handler mHandler;
+
+    @NonNull
+    private final LinkedHashMap<Object, NotificationListChange> mPending = new LinkedHashMap<>();
+    @NonNull
+    private final ArrayList<NotificationListChange> mBatch = new ArrayList<>();
+    private boolean mBathPending;
+    private boolean mScheduled;
+
+    /**
+     * @see #setWindow(int)
+     */
+    private int mWindow = WINDOW_FRAME;
+
+    // Counters
+    private int mEventsCount;
+    private int mCollapsedCount;
+    private int mBatchesCount;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            dispatch();
+        }
+    };
+
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    NotificationEventDispatcher(@NonNull Handler handler, @NonNull Callback callback) {
+        mHandler = handler;
+        mCallback = callback;
+    }
+
+    /**
+     * Sets the period of time in which all events are collected
+     * and merged.
+     *
+     * @param millis the window in millis, or {@link #WINDOW_FRAME} to
+     *               dispatch events once per frame.
+     */
+    public void setWindow(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Window must not be negative!");
+        }
+
+        mWindow = millis;
+    }
+
+    /**
+     * Adds the event to the current batch and schedules dispatching.
+     *
+     * @param n     an instance of notification (must be non-null, if the
+     *              event is not a {@link NotificationPresenter#EVENT_BATH}.
+     * @param event the type of event.
+     */
+    void enqueue(@Nullable OpenNotification n, int event) {
+        Check.getInstance().isInMainThread();
+        mEventsCount++;
+
+        if (event == EVENT_BATH) {
+            // Bath event makes the listeners to rebuild everything, so
+            // no need to send other events.
+            mCollapsedCount += mPending.size() + (mBathPending ? 1 : 0);
+            mPending.clear();
+            mBathPending = true;
+        } else if (mBathPending) {
+            mCollapsedCount++;
+        } else {
+            assert n != null;
+            final Object key = n.getIdentityKey();
+            NotificationListChange prev = mPending.get(key);
+            if (prev == null) {
+                mPending.put(key, new NotificationListChange(event, n));
+            } else {
+                final int merged = merge(prev.event, event);
+                if (merged == EVENT_NONE) {
+                    mPending.remove(key);
+                    mCollapsedCount += 2;
+                } else {
+                    // Put the latest instance of notification, keeping the
+                    // order of the first event.
+                    mPending.put(key, new NotificationListChange(merged, n));
+                    mCollapsedCount++;
+                }
+            }
+        }
+
+        if (!mScheduled) {
+            mScheduled = true;
+            if (mWindow == WINDOW_FRAME) {
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            } else mHandler.postDelayed(mDispatchRunnable, mWindow);
+        }
+    }
+
+    /**
+     * @return the event that reflects both the previous and the
+     * current events of the same notification.
+     */
+    private static int merge(int prev, int event) {
+        switch (event) {
+            case EVENT_REMOVED:
+                // Listeners have never seen this notification.
+                return prev == EVENT_POSTED ? EVENT_NONE : EVENT_REMOVED;
+            case EVENT_POSTED:
+                return prev == EVENT_REMOVED ? EVENT_CHANGED : EVENT_POSTED;
+            case EVENT_CHANGED:
+                return prev == EVENT_POSTED ? EVENT_POSTED : EVENT_CHANGED;
+            case EVENT_CHANGED_SPAM:
+                return prev == EVENT_REMOVED ? EVENT_CHANGED : prev;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private void dispatch() {
+        mScheduled = false;
+
+        if (mBathPending) {
+            mBathPending = false;
+            mBatch.add(new NotificationListChange(EVENT_BATH, null));
+        } else mBatch.addAll(mPending.values());
+        mPending.clear();
+
+        if (!mBatch.isEmpty()) {
+            mBatchesCount++;
+            mCallback.onDispatch(mBatch);
+        }
+        mBatch.clear();
+    }
+
+    //-- COUNTERS -------------------------------------------------------------
+
+    /**
+     * @return the number of all events passed to the dispatcher.
+     */
+    public int getEventsCount() {
+        return mEventsCount;
+    }
+
+    /**
+     * @return the number of events that were merged with others
+     * and never sent separately.
+     */
+    public int getCollapsedEventsCount() {
+        return mCollapsedCount;
+    }
+
+    /**
+     * @return the number of sent batches.
+     */
+    public int getBatchesCount() {
+        return mBatchesCount;
+    }
+
+}
@@ -22,13 +22,20 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 /**
  * Is a list of {@link OpenNotification notifications} with
  * an ability to easily add / replace / remove item from the list.
+ * <p/>
+ * Notifications are kept in a linked hash map by their {@link OpenNotification#getIdentityKey()
+ * identity keys}, so adding, replacing, removing and looking up a notification take constant
+ * time and do not depend on the size of the list. The insertion order is kept; the plain
+ * {@link #list() list} is rebuilt from the map only when it's asked for after a change.
  *
  * @author Artem Chepurnoy
  * @see NotificationUtils#hasIdenticalIds(OpenNotification, OpenNotification)
+ * @see OpenNotification#getIdentityKey()
  */
 final class NotificationList {
 
@@ -44,6 +51,9 @@ final class NotificationList {
 
     @NonNull
     private final ArrayList<OpenNotification> mList;
+    @NonNull
+    private final LinkedHashMap<Object, OpenNotification> mIndex;
+    private boolean mListDirty;
 
     @Nullable
     private OnNotificationListChangedListener mListener;
@@ -92,6 +102,7 @@ final class NotificationList {
     public NotificationList(@Nullable OnNotificationListChangedListener listener) {
         mListener = listener;
         mList = new ArrayList<>(10);
+        mIndex = new LinkedHashMap<>(16);
     }
 
     /**
@@ -134,22 +145,18 @@ final class NotificationList {
      * {@link NotificationList.OnNotificationListChangedListener#onNotificationChanged(OpenNotification n, OpenNotification old)}
      */
     int push(OpenNotification n) {
-        final int index = indexOf(n);
-        if (index == -1) {
-            if (mList.size() > mMaximumSize) {
-                remove(mList.get(0));
+        final Object key = n.getIdentityKey();
+        final OpenNotification old = mIndex.get(key);
+        // Replacing the value keeps the position
+        // of the key in the map.
+        mIndex.put(key, n);
+        mListDirty = true;
+        if (old == null) {
+            if (mIndex.size() > mMaximumSize + 1) {
+                remove(mIndex.values().iterator().next());
             }
-
-            // Add new notification to the list.
-            mList.add(n);
             return notifyListener(EVENT_ADDED, n, null);
-        } else {
-            // Replace old notification with new one.
-            OpenNotification old = mList.get(index);
-            mList.remove(index);
-            mList.add(index, n);
-            return notifyListener(EVENT_CHANGED, n, old);
-        }
+        } else return notifyListener(EVENT_CHANGED, n, old);
     }
 
     /**
@@ -159,15 +166,23 @@ final class NotificationList {
      * @see #push(OpenNotification n)
      */
     public int remove(OpenNotification n) {
-        final int index = indexOf(n);
-        if (index != -1) {
-            OpenNotification old = mList.get(index);
-            mList.remove(index);
+        final OpenNotification old = mIndex.remove(n.getIdentityKey());
+        if (old != null) {
+            mListDirty = true;
             return notifyListener(EVENT_REMOVED, old, null);
         }
         return RESULT_DEFAULT;
     }
 
+    /**
+     * Removes all notifications from the list silently.
+     */
+    public void clear() {
+        mList.clear();
+        mIndex.clear();
+        mListDirty = false;
+    }
+
     /**
      * <b>Do not operate on this list!</b>
      * Use this only for searching and getting notifications.
@@ -176,21 +191,32 @@ final class NotificationList {
      */
     @NonNull
     public ArrayList<OpenNotification> list() {
+        if (mListDirty) {
+            mListDirty = false;
+            mList.clear();
+            mList.addAll(mIndex.values());
+        }
         return mList;
     }
 
     /**
-     * @return the position of given {@link OpenNotification} in
-     * {@link #mList list}, or {@code -1} if not found.
+     * @return the notification from the list that has
+     * {@link NotificationUtils#hasIdenticalIds(OpenNotification, OpenNotification) identical ids}
+     * with given one, or {@code null} if not found.
      */
-    public int indexOf(@NonNull OpenNotification n) {
-        final int size = mList.size();
-        for (int i = 0; i < size; i++) {
-            if (NotificationUtils.hasIdenticalIds(n, mList.get(i))) {
-                return i;
-            }
-        }
-        return -1;
+    @Nullable
+    public OpenNotification get(@NonNull OpenNotification n) {
+        return mIndex.get(n.getIdentityKey());
+    }
+
+    /**
+     * @return {@code true} if the list contains a notification with
+     * {@link NotificationUtils#hasIdenticalIds(OpenNotification, OpenNotification) identical ids},
+     * {@code false} otherwise.
+     * @see #get(OpenNotification)
+     */
+    public boolean contains(@NonNull OpenNotification n) {
+        return mIndex.containsKey(n.getIdentityKey());
     }
 
     /**
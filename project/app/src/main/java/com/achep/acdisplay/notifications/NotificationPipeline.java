@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The staged ingestion pipeline of notifications. Each event goes through
+ * the {@link #STAGE_LOAD load stage} on a background thread, where all heavy
+ * things (such as extracting texts, generating icons, etc.) should be done, and then
+ * through the {@link #STAGE_COMMIT commit stage} on the main thread, which should
+ * only touch the lists and notify the listeners.
+ * <p/>
+ * Pending events are stored in a bounded queue keyed by notification: a newer event
+ * replaces the pending one of the same notification, and a flood of posts makes the
+ * oldest pending posts to be dropped. The queue is drained in small batches, and
+ * the next batch is not loaded until the previous one is committed, so the main
+ * thread never gets more than one batch at once.
+ *
+ * @author Artem Chepurnoy
+ */
+public final class NotificationPipeline {
+
+    private static final String TAG = "NotificationPipeline";
+
+    /**
+     * Time between enqueuing the event and starting its {@link #STAGE_LOAD load stage}.
+     */
+    public static final int STAGE_QUEUE = 0;
+
+    /**
+     * Time of loading the notification on a background thread.
+     */
+    public static final int STAGE_LOAD = 1;
+
+    /**
+     * Time between finishing the {@link #STAGE_LOAD load stage} and starting
+     * the {@link #STAGE_COMMIT commit stage} on the main thread.
+     */
+    public static final int STAGE_DELIVERY = 2;
+
+    /**
+     * Time of committing the notification to the lists on the main thread.
+     */
+    public static final int STAGE_COMMIT = 3;
+
+    private static final int STAGE_COUNT = 4;
+
+    /**
+     * The maximum number of pending events, after which the
+     * oldest droppable events are dropped.
+     */
+    private static final int MAX_QUEUE_SIZE = 128;
+
+    /**
+     * The maximum number of events committed to the main
+     * thread at once. Should be small enough to fit in a frame.
+     */
+    private static final int MAX_BATCH_SIZE = 8;
+
+    @NonNull
+    private final Handler mMainHandler;
+    @NonNull
+    private final Handler mWorkerHandler;
+
+    // Queue
+    private final LinkedHashMap<Object, Event> mQueue = new LinkedHashMap<>();
+    private boolean mDrainScheduled;
+
+    // Metrics
+    private final long[] mStageTotalNanos = new long[STAGE_COUNT];
+    private final long[] mStageMaxNanos = new long[STAGE_COUNT];
+    private final int[] mStageCount = new int[STAGE_COUNT];
+    private int mMaxDepth;
+    private int mDroppedCount;
+    private int mReplacedCount;
+    private int mCancelledCount;
+
+    /**
+     * A pending event of the pipeline.
+     */
+    private static final class Event {
+
+        @Nullable
+        final Runnable load;
+        @NonNull
+        final Runnable commit;
+        final boolean droppable;
+        final long enqueuedAt = System.nanoTime();
+        long loadedAt;
+
+        Event(@Nullable Runnable load, @NonNull Runnable commit, boolean droppable) {
+            this.load = load;
+            this.commit = commit;
+            this.droppable = droppable;
+        }
+
+    }
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    NotificationPipeline(@NonNull Handler mainHandler) {
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+
+        mMainHandler = mainHandler;
+        mWorkerHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Runs the load stage on a background thread, and then the commit
+     * stage on the main thread.
+     *
+     * @param key       the key of the event, or {@code null} if it should not replace
+     *                  any other event. A newer event replaces the pending one
+     *                  with the same key.
+     * @param load      the load stage, or {@code null} to skip it.
+     * @param commit    the commit stage.
+     * @param droppable {@code true} if the event may be dropped when the queue is
+     *                  full, {@code false} otherwise.
+     */
+    void enqueue(@Nullable Object key,
+                 @Nullable Runnable load, @NonNull Runnable commit,
+                 boolean droppable) {
+        Event event = new Event(load, commit, droppable);
+        if (key == null) key = event;
+
+        synchronized (this) {
+            // Remove the pending event to put the new one at
+            // the end of the queue.
+            Event old = mQueue.remove(key);
+            if (old != null) {
+                mReplacedCount++;
+                if (old.load != null && load == null) {
+                    // Removing the notification cancels its posting.
+                    mCancelledCount++;
+                }
+            } else if (mQueue.size() >= MAX_QUEUE_SIZE && droppable) {
+                dropOldest();
+            }
+
+            mQueue.put(key, event);
+            mMaxDepth = Math.max(mMaxDepth, mQueue.size());
+
+            if (!mDrainScheduled) {
+                mDrainScheduled = true;
+                mWorkerHandler.post(mDrainRunnable);
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest droppable event from the queue.
+     */
+    private void dropOldest() {
+        Iterator<Event> iterator = mQueue.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().droppable) {
+                iterator.remove();
+                mDroppedCount++;
+
+                if (DEBUG) Log.w(TAG, "The queue is full: dropped an event.");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Loads the next batch of events on the worker thread and
+     * commits it on the main thread.
+     */
+    private void drain() {
+        final ArrayList<Event> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        synchronized (this) {
+            Iterator<Event> iterator = mQueue.values().iterator();
+            while (iterator.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        for (Event event : batch) {
+            final long loadStartedAt = System.nanoTime();
+            record(STAGE_QUEUE, loadStartedAt - event.enqueuedAt);
+            if (event.load != null) {
+                event.load.run();
+                record(STAGE_LOAD, System.nanoTime() - loadStartedAt);
+            }
+            event.loadedAt = System.nanoTime();
+        }
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Event event : batch) {
+                    final long commitStartedAt = System.nanoTime();
+                    record(STAGE_DELIVERY, commitStartedAt - event.loadedAt);
+                    event.commit.run();
+                    record(STAGE_COMMIT, System.nanoTime() - commitStartedAt);
+                }
+
+                // Load the next batch only after this one
+                // is committed.
+                synchronized (NotificationPipeline.this) {
+                    if (mQueue.isEmpty()) {
+                        mDrainScheduled = false;
+                    } else mWorkerHandler.post(mDrainRunnable);
+                }
+            }
+        });
+    }
+
+    private synchronized void record(int stage, long nanos) {
+        mStageTotalNanos[stage] += nanos;
+        mStageMaxNanos[stage] = Math.max(mStageMaxNanos[stage], nanos);
+        mStageCount[stage]++;
+
+        if (DEBUG && stage == STAGE_COMMIT) {
+            Log.d(TAG, "Notification ingested:"
+                    + " queue=" + getAverageTime(STAGE_QUEUE) + "us"
+                    + " load=" + getAverageTime(STAGE_LOAD) + "us"
+                    + " delivery=" + getAverageTime(STAGE_DELIVERY) + "us"
+                    + " commit=" + getAverageTime(STAGE_COMMIT) + "us"
+                    + " depth=" + mQueue.size());
+        }
+    }
+
+    //-- QUEUE METRICS --------------------------------------------------------
+
+    /**
+     * @return the current number of pending events.
+     */
+    public synchronized int getDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * @return the maximum number of pending events ever.
+     */
+    public synchronized int getMaxDepth() {
+        return mMaxDepth;
+    }
+
+    /**
+     * @return the number of events dropped because of the full queue.
+     */
+    public synchronized int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return the number of pending events replaced by newer events
+     * of the same notification.
+     */
+    public synchronized int getReplacedCount() {
+        return mReplacedCount;
+    }
+
+    /**
+     * @return the number of pending posts cancelled by removals.
+     */
+    public synchronized int getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    //-- TIMINGS --------------------------------------------------------------
+
+    /**
+     * @return the average time of the stage in microseconds.
+     * @see #STAGE_QUEUE
+     * @see #STAGE_LOAD
+     * @see #STAGE_DELIVERY
+     * @see #STAGE_COMMIT
+     */
+    public synchronized long getAverageTime(int stage) {
+        int count = mStageCount[stage];
+        return count == 0 ? 0 : mStageTotalNanos[stage] / count / 1000;
+    }
+
+    /**
+     * @return the maximum time of the stage in microseconds.
+     * @see #getAverageTime(int)
+     */
+    public synchronized long getMaxTime(int stage) {
+        return mStageMaxNanos[stage] / 1000;
+    }
+
+    /**
+     * @return how many events have passed the stage.
+     * @see #getAverageTime(int)
+     */
+    public synchronized int getCount(int stage) {
+        return mStageCount[stage];
+    }
+
+    /**
+     * Resets all timings and metrics of the queue.
+     */
+    public synchronized void resetTimings() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            mStageTotalNanos[i] = 0;
+            mStageMaxNanos[i] = 0;
+            mStageCount[i] = 0;
+        }
+        mMaxDepth = mQueue.size();
+        mDroppedCount = 0;
+        mReplacedCount = 0;
+        mCancelledCount = 0;
+    }
+
+}
@@ -112,16 +112,18 @@ public class NotificationPresenter implements
     private final NotificationList mGList;
     private final NotificationList mLList;
     private Set<String> mGroupsWithSummaries;
+    private final DirtySet mDirty = new DirtySet();
 
     private final ArrayList<WeakReference<OnNotificationListChangedListener>> mListenersRefs;
-    private final ArrayList<NotificationListChange> mFrozenEvents;
-    private boolean mFrozen;
+    private final NotificationEventDispatcher mDispatcher;
 
     private final Config mConfig;
     private final Blacklist mBlacklist;
+    private final SnoozeStore mSnoozes;
 
     // Threading
     private final Handler mHandler;
+    private final NotificationPipeline mPipeline;
 
     // Threading
     private final Formatter mFormatter;
@@ -187,14 +189,8 @@ public class NotificationPresenter implements
                 // a -= b += a -= b *= -1;
             }
 
-            final int lower = a, higher = b;
-            rebuildLocalList(new Comparator() {
-                @Override
-                public boolean needsRebuild(@NonNull OpenNotification osbn) {
-                    int priority = osbn.getNotification().priority;
-                    return priority >= lower && priority <= higher;
-                }
-            });
+            mDirty.addPriorityRange(a, b);
+            rebuildLocalList();
         }
 
     }
@@ -216,13 +212,9 @@ public class NotificationPresenter implements
             }
         }
 
-        private void handlePackageVisibilityChanged(@NonNull final String packageName) {
-            rebuildLocalList(new Comparator() {
-                @Override
-                public boolean needsRebuild(@NonNull OpenNotification osbn) {
-                    return osbn.getPackageName().equals(packageName);
-                }
-            });
+        private void handlePackageVisibilityChanged(@NonNull String packageName) {
+            mDirty.addPackage(packageName);
+            rebuildLocalList();
         }
     }
 
@@ -234,18 +226,60 @@ public class NotificationPresenter implements
         public boolean isValid(@NonNull OpenNotification osbn);
     }
 
-    private void rebuildLocalList(@NonNull Comparator comparator) {
-        for (OpenNotification n : getLargeList().list()) {
-            if (comparator.needsRebuild(n)) {
-                rebuildLocalList();
-                break;
+    /**
+     * Keeps track of packages, group keys, priority buckets and single notifications
+     * that might have changed their validity since the last
+     * {@link #rebuildLocalList() rebuild of the local list}.
+     */
+    private static final class DirtySet implements Comparator {
+
+        private final Set<String> mPackages = new HashSet<>();
+        private final Set<String> mGroupKeys = new HashSet<>();
+        private final Set<Object> mKeys = new HashSet<>();
+        private int mPriorityLower = Integer.MAX_VALUE;
+        private int mPriorityHigher = Integer.MIN_VALUE;
+
+        public void addPackage(@NonNull String packageName) {
+            mPackages.add(packageName);
+        }
+
+        public void addGroup(@NonNull String groupKey) {
+            mGroupKeys.add(groupKey);
+        }
+
+        public void addNotification(@NonNull OpenNotification n) {
+            mKeys.add(n.getIdentityKey());
+        }
+
+        public void addPriorityRange(int lower, int higher) {
+            mPriorityLower = Math.min(mPriorityLower, lower);
+            mPriorityHigher = Math.max(mPriorityHigher, higher);
+        }
+
+        public void clear() {
+            mPackages.clear();
+            mGroupKeys.clear();
+            mKeys.clear();
+            mPriorityLower = Integer.MAX_VALUE;
+            mPriorityHigher = Integer.MIN_VALUE;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean needsRebuild(@NonNull OpenNotification osbn) {
+            int priority = osbn.getNotification().priority;
+            if (priority >= mPriorityLower && priority <= mPriorityHigher
+                    || mPackages.contains(osbn.getPackageName())) {
+                return true;
             }
+
+            String groupKey = osbn.getGroupKey();
+            return groupKey != null && mGroupKeys.contains(groupKey)
+                    || !mKeys.isEmpty() && mKeys.contains(osbn.getIdentityKey());
         }
-    }
 
-    @NonNull
-    private NotificationList getLargeList() {
-        return KEEP_GLOBAL_LIST ? mGList : mLList;
     }
 
     //-- LISTENERS ------------------------------------------------------------
@@ -304,12 +338,19 @@ public class NotificationPresenter implements
     //-- MAIN -----------------------------------------------------------------
 
     private NotificationPresenter() {
-        mFrozenEvents = new ArrayList<>();
         mListenersRefs = new ArrayList<>();
         mGList = new NotificationList(null);
         mLList = new NotificationList(this);
         mGroupsWithSummaries = new HashSet<>();
         mHandler = new Handler(Looper.getMainLooper());
+        mPipeline = new NotificationPipeline(mHandler);
+        mDispatcher = new NotificationEventDispatcher(mHandler,
+                new NotificationEventDispatcher.Callback() {
+                    @Override
+                    public void onDispatch(@NonNull ArrayList<NotificationListChange> changes) {
+                        dispatchToListeners(changes);
+                    }
+                });
         mFormatter = new Formatter();
 
         if (!Device.hasJellyBeanMR2Api()) { // pre 4.3 version
@@ -325,6 +366,8 @@ public class NotificationPresenter implements
         mBlacklistListener = new BlacklistListener();
         mBlacklist = Blacklist.getInstance();
         mBlacklist.registerListener(mBlacklistListener);
+
+        mSnoozes = SnoozeStore.getInstance();
     }
 
     @NonNull
@@ -341,18 +384,94 @@ public class NotificationPresenter implements
         if (DEBUG) Log.d(TAG, "Initially posting " + n + " from \'"
                 + Thread.currentThread().getName() + "\' thread.");
 
-        mHandler.post(new Runnable() {
+        mPipeline.enqueue(getPipelineKey(n), new Runnable() {
+            @Override
+            public void run() {
+                loadNotification(context, n);
+            }
+        }, new Runnable() {
             @Override
             public void run() {
-                //noinspection deprecation
                 postNotification(context, n, flags);
             }
-        });
+        }, true);
+    }
+
+    /**
+     * @return the key to merge the pending events of the notification by, or {@code null}
+     * if the notification can not be identified before it's loaded.
+     * @see NotificationPipeline#enqueue(Object, Runnable, Runnable, boolean)
+     */
+    @Nullable
+    private static Object getPipelineKey(@NonNull OpenNotification n) {
+        return n.getStatusBarNotification() != null ? n.getIdentityKey() : null;
+    }
+
+    /**
+     * Loads the notification's data, if it's going to be added to the list.
+     * This is a heavy operation, so it should be run on a background thread.
+     *
+     * @see NotificationPipeline#STAGE_LOAD
+     */
+    private void loadNotification(@NonNull Context context, @NonNull OpenNotification n) {
+        // Do not load snoozed notifications: they'll be loaded when
+        // re-posted on the snooze's expiry.
+        if (getPipelineKey(n) != null && mSnoozes.isSnoozed(n)) {
+            if (DEBUG) Log.d(TAG, "Skipped loading of the snoozed " + n);
+            return;
+        }
+
+        // If notification will not be added to the
+        // list there's no point of loading its data.
+        if (isValidForGlobal(n)) {
+            n.load(context);
+            n.setEmoticonsEnabled(mConfig.isEmoticonsEnabled());
+
+            // Load the texts from views now, while we're on a background
+            // thread, but only if the notification may be shown: the others
+            // load them if they become allowed later.
+            if (isAllowedForLocal(n)) n.ensureTextsLoaded();
+        }
+    }
+
+    /**
+     * Loads the texts of the notification from views on the pipeline, and then
+     * re-validates it. This is for the notifications that were not allowed to be
+     * shown when they were loaded.
+     *
+     * @see #loadNotification(Context, OpenNotification)
+     */
+    private void loadTextsAsync(@NonNull final OpenNotification n) {
+        mPipeline.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                n.ensureTextsLoaded();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                // The notification might have been removed
+                // or replaced meanwhile.
+                if (mGList.get(n) != n) return;
+                mDirty.addNotification(n);
+                rebuildLocalList();
+            }
+        }, false);
+    }
+
+    /**
+     * @return the ingestion pipeline of notifications, mostly
+     * to get its timings.
+     */
+    @NonNull
+    public NotificationPipeline getPipeline() {
+        return mPipeline;
     }
 
     /**
      * Posts notification to global list, notifies every follower
-     * about this change.
+     * about this change. The notification must be
+     * {@link #loadNotification(Context, OpenNotification) loaded} before.
      * <p><i>
      * To create {@link OpenNotification}, use
      * {@link OpenNotification#newInstance(StatusBarNotification)} or
@@ -378,11 +497,7 @@ public class NotificationPresenter implements
         boolean localValid = false;
         boolean isGroupSummary = false;
 
-        // If notification will not be added to the
-        // list there's no point of loading its data.
         if (globalValid) {
-            n.load(context);
-
             if (n.isGroupSummary()) {
                 isGroupSummary = true;
 
@@ -391,10 +506,9 @@ public class NotificationPresenter implements
                 mGroupsWithSummaries.add(groupKey);
             }
 
-            Config config = Config.getInstance();
-            n.setEmoticonsEnabled(config.isEmoticonsEnabled());
-            // Selective load exactly what we need and nothing more.
-            // This will reduce RAM consumption for a bit (1% or so.)
+            // The emoticons option might have been changed
+            // while the notification was loading.
+            n.setEmoticonsEnabled(mConfig.isEmoticonsEnabled());
 
             localValid = isValidForLocal(n);
         }
@@ -405,8 +519,12 @@ public class NotificationPresenter implements
         boolean flagWakeUp = !Operator.bitAnd(
                 flags, FLAG_DONT_WAKE_UP);
 
-        freezeListeners(); // we should handle the event first
-        if (localValid && isGroupSummary) rebuildLocalList();
+        if (localValid && isGroupSummary) {
+            String groupKey = n.getGroupKey();
+            assert groupKey != null;
+            mDirty.addGroup(groupKey);
+            rebuildLocalList();
+        }
         if (KEEP_GLOBAL_LIST) mGList.pushOrRemove(n, globalValid, flagIgnoreFollowers);
         int result = mLList.pushOrRemove(n, localValid, flagIgnoreFollowers);
 
@@ -415,23 +533,21 @@ public class NotificationPresenter implements
 //            mPresenter.tryStartGuiCauseNotification(context, n);
 //            TODO:
         }
-
-        // Release listeners and send all pending
-        // events.
-        meltListeners();
     }
 
     public void removeNotificationFromMain(final @NonNull OpenNotification n) {
         if (DEBUG) Log.d(TAG, "Initially removing " + n + " from \'"
                 + Thread.currentThread().getName() + "\' thread.");
 
-        mHandler.post(new Runnable() {
+        // Go through the pipeline to keep the order
+        // of posting and removing.
+        mPipeline.enqueue(getPipelineKey(n), null, new Runnable() {
             @Override
             public void run() {
                 //noinspection deprecation
                 removeNotification(n);
             }
-        });
+        }, false);
     }
 
     /**
@@ -452,45 +568,46 @@ public class NotificationPresenter implements
             String groupKey = n.getGroupKey();
             assert groupKey != null;
             mGroupsWithSummaries.remove(groupKey);
+            mDirty.addGroup(groupKey);
             rebuildLocalList();
         }
     }
 
     /**
-     * Re-validates all notifications from {@link #mGList global list}
-     * and sends {@link #EVENT_BATH bath} event after.
+     * Re-validates the notifications from {@link #mGList global list} that
+     * are marked in the {@link #mDirty dirty set}, and sends the
+     * {@link #EVENT_POSTED posted} and {@link #EVENT_REMOVED removed} events
+     * of the changed ones after.
      *
      * @see #isValidForLocal(OpenNotification)
      * @see #isValidForGlobal(OpenNotification)
      */
     private void rebuildLocalList() {
-        ArrayList<NotificationListChange> changes = new ArrayList<>();
-
-        // Remove not valid notifications
-        // from local list.
-        ArrayList<OpenNotification> list = mLList.list();
-        for (int i = 0; i < list.size(); i++) {
-            OpenNotification n = list.get(i);
-            if (!isValidForLocal(n)) {
-                list.remove(i--);
-                changes.add(new NotificationListChange(EVENT_REMOVED, n));
+        // Remove not valid notifications from local list. Iterate
+        // over a copy: the removal does not shrink the cached list, and
+        // the listeners may ask for the rebuilt one.
+        ArrayList<OpenNotification> list = new ArrayList<>(mLList.list());
+        for (OpenNotification n : list) {
+            if (mDirty.needsRebuild(n) && !isValidForLocal(n)) {
+                mLList.pushOrRemove(n, false, true);
+                notifyListeners(n, EVENT_REMOVED);
             }
         }
 
         // Add newly valid notifications to local list.
         for (OpenNotification n : mGList.list()) {
-            if (isValidForLocal(n) && mLList.indexOf(n) == -1) {
-                list.add(n);
-                changes.add(new NotificationListChange(EVENT_POSTED, n));
+            if (mDirty.needsRebuild(n) && !mLList.contains(n)) {
+                if (isValidForLocal(n)) {
+                    mLList.pushOrRemove(n, true, true);
+                    notifyListeners(n, EVENT_POSTED);
+                } else if (!n.isTextsLoaded() && isAllowedForLocal(n)) {
+                    // Became allowed, but has not got the texts yet.
+                    loadTextsAsync(n);
+                }
             }
         }
 
-        int size = changes.size();
-        if (size > 4) {
-            notifyListeners(null, EVENT_BATH);
-        } else if (size > 0) {
-            notifyListeners(changes);
-        }
+        mDirty.clear();
     }
 
     @NonNull
@@ -567,41 +684,30 @@ public class NotificationPresenter implements
     }
 
     /**
-     * Freezes the listeners notification process and
-     * stores all events to list.
-     *
-     * @see #meltListeners()
+     * @return the dispatcher of events, mostly to configure it
+     * or to get its counters.
      */
-    private void freezeListeners() {
-        mFrozen = true;
+    @NonNull
+    public NotificationEventDispatcher getEventDispatcher() {
+        return mDispatcher;
     }
 
     /**
-     * Unfreezes all events and sends them.
-     *
-     * @see #freezeListeners()
+     * Passes the event to the {@link #mDispatcher dispatcher}, which will
+     * merge it with other events of this notification and send it to listeners
+     * on the next frame.
      */
-    private void meltListeners() {
-        mFrozen = false;
-        notifyListeners(mFrozenEvents);
-        mFrozenEvents.clear();
-    }
-
     private void notifyListeners(@Nullable OpenNotification n, int event) {
-        notifyListeners(n, event, true);
+        mDispatcher.enqueue(n, event);
     }
 
-    private void notifyListeners(@Nullable OpenNotification n, int event,
-                                 boolean isLastEventInSequence) {
+    /**
+     * Sends the batch of events to every listener.
+     */
+    private void dispatchToListeners(@NonNull ArrayList<NotificationListChange> changes) {
         Check.getInstance().isInMainThread();
 
-        if (mFrozen) {
-            if (mFrozenEvents.size() >= 1 && mFrozenEvents.get(0).event == EVENT_BATH) return;
-            if (event == EVENT_BATH) mFrozenEvents.clear();
-            mFrozenEvents.add(new NotificationListChange(event, n));
-            return;
-        }
-
+        final int size = changes.size();
         for (int i = mListenersRefs.size() - 1; i >= 0; i--) {
             WeakReference<OnNotificationListChangedListener> ref = mListenersRefs.get(i);
             OnNotificationListChangedListener l = ref.get();
@@ -612,32 +718,56 @@ public class NotificationPresenter implements
                 Log.w(TAG, "Deleting an unused listener!");
                 mListenersRefs.remove(i);
             } else {
-                l.onNotificationListChanged(this, n, event, isLastEventInSequence);
+                for (int j = 0; j < size; j++) {
+                    NotificationListChange change = changes.get(j);
+                    l.onNotificationListChanged(this, change.notification, change.event, j + 1 == size);
+                }
             }
         }
     }
 
-    private void notifyListeners(@NonNull ArrayList<NotificationListChange> changes) {
-        int size = changes.size();
-        for (int i = 0; i < size; i++) {
-            NotificationListChange change = changes.get(i);
-            notifyListeners(change.notification, change.event, i + 1 == size);
-        }
-    }
-
     /**
      * @return {@code true} if notification may be shown to user,
      * {@code false} otherwise.
      */
     private boolean isValidForLocal(@NonNull OpenNotification notification) {
-        AppConfig config = mBlacklist.getAppConfig(notification.getPackageName());
+        if (!isAllowedForLocal(notification)) {
+            return false;
+        }
 
-        if (config.isHidden()) {
+        Check.getInstance().isTrue(Device.hasLollipopApi() || !notification.isGroupChild());
+        if (notification.isGroupChild() && mGroupsWithSummaries.contains(notification.getGroupKey())) {
+            return false;
+        }
+
+        // Do not allow notifications with no content.
+        return notification.hasContent();
+    }
+
+    /**
+     * Checks the notification by its cheap data only: the app's flags, the priority,
+     * the flags of notification etc. This doesn't need the heavy data of notification
+     * to be loaded.
+     *
+     * @return {@code false} if the notification may not be shown to user,
+     * {@code true} otherwise.
+     * @see #isValidForLocal(OpenNotification)
+     */
+    private boolean isAllowedForLocal(@NonNull OpenNotification notification) {
+        if (!notification.isLoaded()) {
+            // Do not display notification that skipped the loading
+            // while snoozed: it must be re-posted first.
+            return false;
+        }
+
+        final int flags = mBlacklist.getAppFlags(notification.getPackageName());
+
+        if (Operator.bitAnd(flags, Blacklist.FLAG_HIDDEN)) {
             // Do not display any notifications from this app.
             return false;
         }
 
-        if (!notification.isClearable() && !config.isNonClearableEnabled()) {
+        if (!notification.isClearable() && !Operator.bitAnd(flags, Blacklist.FLAG_NON_CLEARABLE)) {
             // Do not display non-clearable notification.
             return false;
         }
@@ -652,21 +782,12 @@ public class NotificationPresenter implements
             return false;
         }
 
-        if (!LOCAL_FILTER.isValid(notification)) {
+        if (mSnoozes.isSnoozed(notification)) {
+            // Do not display snoozed notification.
             return false;
         }
 
-        Check.getInstance().isTrue(Device.hasLollipopApi() || !notification.isGroupChild());
-        if (notification.isGroupChild() && mGroupsWithSummaries.contains(notification.getGroupKey())) {
-            return false;
-        }
-
-        // Do not allow notifications with no content.
-        return !(TextUtils.isEmpty(notification.titleText)
-                && TextUtils.isEmpty(notification.titleBigText)
-                && TextUtils.isEmpty(notification.messageText)
-                && TextUtils.isEmpty(notification.messageBigText)
-                && notification.messageTextLines == null);
+        return LOCAL_FILTER.isValid(notification);
     }
 
     // Here we filter completely wrong
@@ -686,39 +807,90 @@ public class NotificationPresenter implements
             for (OpenNotification n : mGList.list()) {
                 if (key.equals(n.getGroupKey())) n.setRead(isRead);
             }
+            mDirty.addGroup(key);
         }
+        mDirty.addNotification(notification);
         rebuildLocalList();
     }
 
+    //-- SNOOZING -------------------------------------------------------------
+
+    /**
+     * Hides the notification for the given time. Its updates are not shown
+     * (and not even loaded) until the snooze expires.
+     *
+     * @see #onSnoozesExpired(Context)
+     */
+    public void snoozeNotification(@NonNull Context context,
+                                   @NonNull OpenNotification notification,
+                                   long durationMillis) {
+        Check.getInstance().isInMainThread();
+        mSnoozes.snooze(context, notification, System.currentTimeMillis() + durationMillis);
+        mDirty.addNotification(notification);
+        rebuildLocalList();
+    }
+
+    /**
+     * Re-posts the notifications whose snoozes have expired. Those may have never
+     * been loaded, so they go through the pipeline as new ones. The new instances
+     * are posted, so the pipeline doesn't load the ones the main thread reads.
+     *
+     * @see com.achep.acdisplay.receiver.SnoozeReceiver
+     */
+    @SuppressLint("NewApi")
+    public void onSnoozesExpired(@NonNull Context context) {
+        Check.getInstance().isInMainThread();
+        ArrayList<String> keys = mSnoozes.pollExpired(context);
+        if (keys.isEmpty()) return;
+
+        Set<String> expired = new HashSet<>(keys);
+        for (OpenNotification n : new ArrayList<>(mGList.list())) {
+            StatusBarNotification sbn = n.getStatusBarNotification();
+            if (sbn != null && expired.contains(SnoozeStore.getKey(n))) {
+                postNotificationFromMain(context, OpenNotification.newInstance(sbn), 0);
+            }
+        }
+    }
+
     //-- INITIALIZING ---------------------------------------------------------
 
     void init(final @NonNull Context context,
               final @NonNull StatusBarNotification[] activeNotifications) {
-        mHandler.post(new Runnable() {
+        final OpenNotification[] notifications = new OpenNotification[activeNotifications.length];
+        mPipeline.enqueue(null, new Runnable() {
             @SuppressLint("NewApi")
+            @Override
+            public void run() {
+                mSnoozes.ensureLoaded(context);
+                for (int i = 0; i < notifications.length; i++) {
+                    OpenNotification n = OpenNotification.newInstance(activeNotifications[i]);
+                    loadNotification(context, n);
+                    notifications[i] = n;
+                }
+            }
+        }, new Runnable() {
             @Override
             public void run() {
                 clear(false);
 
                 if (DEBUG) Log.d(TAG, "Initializing the notifications list...");
-                for (StatusBarNotification sbn : activeNotifications) {
-                    OpenNotification n = OpenNotification.newInstance(sbn);
+                for (OpenNotification n : notifications) {
                     postNotification(context, n, FLAG_DONT_NOTIFY_FOLLOWERS | FLAG_DONT_WAKE_UP);
                 }
 
                 notifyListeners(null, EVENT_BATH);
             }
-        });
+        }, false);
     }
 
     void clearFromMain(final boolean notifyListeners) {
-        mHandler.post(new Runnable() {
+        mPipeline.enqueue(null, null, new Runnable() {
             @SuppressLint("NewApi")
             @Override
             public void run() {
                 clear(notifyListeners);
             }
-        });
+        }, false);
     }
 
     void clear(final boolean notifyListeners) {
@@ -727,8 +899,8 @@ public class NotificationPresenter implements
                 + notifyListeners);
 
         mGroupsWithSummaries.clear();
-        mGList.list().clear();
-        mLList.list().clear();
+        mGList.clear();
+        mLList.clear();
         if (notifyListeners) notifyListeners(null, EVENT_BATH);
     }
 
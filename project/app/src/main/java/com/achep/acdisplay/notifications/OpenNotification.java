@@ -22,27 +22,24 @@ import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.app.Notification;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.SystemClock;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v7.graphics.Palette;
 import android.text.TextUtils;
 
+import com.achep.acdisplay.graphics.BrandColors;
 import com.achep.acdisplay.graphics.IconFactory;
 import com.achep.base.Device;
-import com.achep.base.async.AsyncTask;
+import com.achep.base.async.Worker;
 import com.achep.base.interfaces.ISubscriptable;
 import com.achep.base.utils.PackageUtils;
 import com.achep.base.utils.smiley.SmileyParser;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Artem Chepurnoy
@@ -80,6 +77,16 @@ public abstract class OpenNotification implements
     public static final int EVENT_READ = 2;
     public static final int EVENT_BRAND_COLOR = 4;
 
+    // Counters of the lazily loaded data: the difference between the
+    // number of loaded notifications and any of the others is the
+    // work skipped.
+    private static final AtomicInteger sLoadedCount = new AtomicInteger();
+    private static final AtomicInteger sTextsFromViewLoadedCount = new AtomicInteger();
+    private static final AtomicInteger sTextsFromViewSkippedCount = new AtomicInteger();
+    private static final AtomicInteger sIconsLoadedCount = new AtomicInteger();
+    private static final AtomicInteger sBrandColorsLoadedCount = new AtomicInteger();
+    private static final AtomicInteger sTextsFormattedCount = new AtomicInteger();
+
     @Nullable
     private final StatusBarNotification mStatusBarNotification;
     @NonNull
@@ -87,11 +94,20 @@ public abstract class OpenNotification implements
     @Nullable
     private Action[] mActions;
     private boolean mEmoticonsEnabled;
+    private boolean mTextsLoaded;
+    private boolean mTextsFormatted;
     private boolean mMine;
     private boolean mRead;
     private long mLoadedTimestamp;
     private int mNumber;
 
+    /**
+     * The application context to load the heavy data with.
+     *
+     * @see #load(Context)
+     */
+    private Context mContext;
+
     // Extracted
     @Nullable
     public CharSequence titleBigText;
@@ -117,21 +133,36 @@ public abstract class OpenNotification implements
     @Nullable
     private Bitmap mIconBitmap;
     @Nullable
-    private AsyncTask<Void, Void, Bitmap> mIconWorker;
+    private Worker.Job<Bitmap> mIconJob;
     @NonNull
-    private final IconFactory.IconAsyncListener mIconCallback =
+    private final IconFactory.IconAsyncListener mIconListener =
             new IconFactory.IconAsyncListener() {
                 @Override
                 public void onGenerated(@NonNull Bitmap bitmap) {
-                    mIconWorker = null;
-                    setIcon(bitmap);
+                    mIconJob = null;
+                    mIconBitmap = bitmap;
+                    notifyListeners(EVENT_ICON);
+                }
+
+                @Override
+                public void onCancelled() {
+                    // Let the next call of #getIcon() try again.
+                    mIconJob = null;
                 }
             };
 
     // Brand color.
-    private int mBrandColor = Color.WHITE;
-    @Nullable
-    private android.os.AsyncTask<Bitmap, Void, Palette> mPaletteWorker;
+    private int mBrandColor = BrandColors.COLOR_DEFAULT;
+    private boolean mBrandColorRequested;
+    @NonNull
+    private final BrandColors.OnColorGeneratedListener mBrandColorListener =
+            new BrandColors.OnColorGeneratedListener() {
+                @Override
+                public void onColorGenerated(@NonNull String packageName, int color) {
+                    mBrandColor = color;
+                    notifyListeners(EVENT_BRAND_COLOR);
+                }
+            };
 
     // Listeners
     @NonNull
@@ -142,54 +173,112 @@ public abstract class OpenNotification implements
         mNotification = n;
     }
 
+    /**
+     * Loads the cheap data of the notification, needed to filter it: actions, number,
+     * texts from extras etc. This must be run on a background thread, before the
+     * notification is added to any list.
+     * <p/>
+     * The heavy data is loaded separately: the texts from views by {@link #ensureTextsLoaded()}
+     * on the same background thread, the icon by {@link #getIcon()}, the brand color by
+     * {@link #getBrandColor()} and the emoticons by {@link #ensureTextsFormatted()}. This
+     * way notifications that are filtered out or never shown don't cost that much.
+     *
+     * @see NotificationPipeline
+     */
     public void load(@NonNull Context context) {
+        mContext = context.getApplicationContext();
         mLoadedTimestamp = SystemClock.elapsedRealtime();
         mMine = TextUtils.equals(getPackageName(), PackageUtils.getName(context));
         mActions = Action.makeFor(mNotification);
         mNumber = mNotification.number;
 
-        // Load the brand color.
-        try {
-            String packageName = getPackageName();
-            Drawable appIcon = context.getPackageManager().getApplicationIcon(packageName);
-
-            final Bitmap bitmap = Bitmap.createBitmap(
-                    appIcon.getMinimumWidth(),
-                    appIcon.getMinimumHeight(),
-                    Bitmap.Config.ARGB_4444);
-            appIcon.draw(new Canvas(bitmap));
-            AsyncTask.stop(mPaletteWorker);
-            mPaletteWorker = Palette.generateAsync(bitmap, new Palette.PaletteAsyncListener() {
-                @Override
-                public void onGenerated(Palette palette) {
-                    mBrandColor = palette.getVibrantColor(Color.WHITE);
-                    notifyListeners(EVENT_BRAND_COLOR);
-                    bitmap.recycle();
-                }
-            });
-        } catch (PackageManager.NameNotFoundException e) { /* do nothing */ }
+        // Load the texts from extras; loading from views is
+        // much heavier, so it's postponed.
+        synchronized (this) {
+            mTextsFormatted = false;
+            mTextsLoaded = new Extractor().loadTexts(context, this);
+            if (mTextsLoaded) {
+                onTextsLoaded();
+            } else sTextsFromViewSkippedCount.incrementAndGet();
+        }
+        sLoadedCount.incrementAndGet();
+    }
+
+    /**
+     * @return {@code true} if the notification has been {@link #load(Context) loaded},
+     * {@code false} otherwise.
+     */
+    public boolean isLoaded() {
+        return mContext != null;
+    }
 
-        // Load notification icon.
-        AsyncTask.stop(mIconWorker);
-        mIconWorker = IconFactory.generateAsync(context, this, mIconCallback);
+    /**
+     * Loads the texts from views, if the extras have not got any. This inflates
+     * the views, so it must be run on a background thread after {@link #load(Context)}.
+     *
+     * @see #hasContent()
+     */
+    synchronized void ensureTextsLoaded() {
+        if (mTextsLoaded) return;
+        mTextsLoaded = true;
+
+        new Extractor().loadTextsFromView(mContext, this);
+        onTextsLoaded();
+        sTextsFromViewSkippedCount.decrementAndGet();
+        sTextsFromViewLoadedCount.incrementAndGet();
+    }
 
-        // Load all other things, such as title text, message text
-        // and more and more.
-        new Extractor().loadTexts(context, this);
+    /**
+     * @return {@code true} if the texts are loaded, either from the extras or
+     * from the views, {@code false} otherwise.
+     * @see #ensureTextsLoaded()
+     */
+    synchronized boolean isTextsLoaded() {
+        return mTextsLoaded;
+    }
+
+    private void onTextsLoaded() {
         messageText = ensureNotEmpty(messageText);
         messageBigText = ensureNotEmpty(messageBigText);
 
         messageTextOrigin = messageText;
         messageBigTextOrigin = messageBigText;
-        messageTextLinesOrigin = messageTextLines == null ? null : messageTextLines.clone();
+        // The lines may be the array of the notification's extras,
+        // so keep them untouched and format a copy.
+        messageTextLinesOrigin = messageTextLines;
+        messageTextLines = messageTextLines == null ? null : messageTextLines.clone();
+    }
 
-        // Initially load emoticons.
+    /**
+     * Applies the emoticons to the texts, if not done yet. This should be
+     * called before showing the texts.
+     *
+     * @see #setEmoticonsEnabled(boolean)
+     */
+    public synchronized void ensureTextsFormatted() {
+        // The texts from views are never loaded here: this
+        // is called on the main thread.
+        if (mTextsFormatted || !mTextsLoaded) return;
+        mTextsFormatted = true;
         if (mEmoticonsEnabled) {
-            mEmoticonsEnabled = false;
-            setEmoticonsEnabled(true);
+            reformatTexts();
+            sTextsFormattedCount.incrementAndGet();
         }
     }
 
+    /**
+     * @return {@code true} if the notification has any text to show, {@code false}
+     * otherwise or if the texts are not {@link #ensureTextsLoaded() loaded} yet.
+     */
+    public synchronized boolean hasContent() {
+        if (!mTextsLoaded) return false;
+        return !(TextUtils.isEmpty(titleText)
+                && TextUtils.isEmpty(titleBigText)
+                && TextUtils.isEmpty(messageText)
+                && TextUtils.isEmpty(messageBigText)
+                && messageTextLines == null);
+    }
+
     @Nullable
     private CharSequence ensureNotEmpty(@Nullable CharSequence cs) {
         return TextUtils.isEmpty(cs) ? null : cs;
@@ -221,8 +310,20 @@ public abstract class OpenNotification implements
         return mActions;
     }
 
+    /**
+     * @return the icon of the notification, or {@code null} if it's not generated yet.
+     * The first call starts generating the icon, and then notifies the listeners
+     * with {@link #EVENT_ICON}.
+     */
     @Nullable
     public Bitmap getIcon() {
+        if (mIconBitmap == null && mIconJob == null && mContext != null) {
+            sIconsLoadedCount.incrementAndGet();
+            mIconBitmap = IconFactory.peek(mContext, this);
+            if (mIconBitmap == null) {
+                mIconJob = IconFactory.generateAsync(mContext, this, mIconListener);
+            }
+        }
         return mIconBitmap;
     }
 
@@ -242,7 +343,17 @@ public abstract class OpenNotification implements
         return mNumber;
     }
 
+    /**
+     * @return the brand color of the app. The first call starts generating the color,
+     * if it's not cached yet, and then notifies the listeners with {@link #EVENT_BRAND_COLOR}.
+     */
     public int getBrandColor() {
+        if (!mBrandColorRequested && mContext != null) {
+            mBrandColorRequested = true;
+            sBrandColorsLoadedCount.incrementAndGet();
+            mBrandColor = BrandColors.getInstance().getColor(
+                    mContext, getPackageName(), mBrandColorListener);
+        }
         return mBrandColor;
     }
 
@@ -282,6 +393,18 @@ public abstract class OpenNotification implements
     @SuppressWarnings("ConstantConditions")
     public abstract boolean hasIdenticalIds(@Nullable OpenNotification n);
 
+    /**
+     * Returns the key of this notification, that is equal for any two notifications
+     * with {@link #hasIdenticalIds(OpenNotification) identical ids}. This key is used for
+     * hash-based lookups in the {@link NotificationList}, so it should be cheap to get and
+     * must not change while the notification is on the list.
+     *
+     * @return the identity key of the notification.
+     * @see #hasIdenticalIds(OpenNotification)
+     */
+    @NonNull
+    public abstract Object getIdentityKey();
+
     //-- NOTIFICATION DATA ----------------------------------------------------
 
     /**
@@ -326,16 +449,15 @@ public abstract class OpenNotification implements
         }
     }
 
-    private void setIcon(@Nullable Bitmap bitmap) {
-        if (mIconBitmap == (mIconBitmap = bitmap)) return;
-        notifyListeners(EVENT_ICON);
-    }
-
     //-- EMOTICONS ------------------------------------------------------------
 
-    public void setEmoticonsEnabled(boolean enabled) {
+    /**
+     * Sets the emoticons enabled or disabled. The texts are reformatted
+     * right away only if they have been {@link #ensureTextsFormatted() formatted} before.
+     */
+    public synchronized void setEmoticonsEnabled(boolean enabled) {
         if (mEmoticonsEnabled == (mEmoticonsEnabled = enabled)) return;
-        reformatTexts();
+        if (mTextsFormatted) reformatTexts();
     }
 
     //-- BASICS ---------------------------------------------------------------
@@ -401,8 +523,7 @@ public abstract class OpenNotification implements
      * Clears some notification's resources.
      */
     public void recycle() {
-        AsyncTask.stop(mPaletteWorker);
-        AsyncTask.stop(mIconWorker);
+        if (mIconJob != null) mIconJob.cancel();
     }
 
     /**
@@ -458,4 +579,50 @@ public abstract class OpenNotification implements
         return false;
     }
 
+    //-- STATISTICS -----------------------------------------------------------
+
+    /**
+     * @return the number of loaded notifications.
+     * @see #load(Context)
+     */
+    public static int getLoadedCount() {
+        return sLoadedCount.get();
+    }
+
+    /**
+     * @return how many notifications have loaded the texts from views.
+     */
+    public static int getTextsFromViewLoadedCount() {
+        return sTextsFromViewLoadedCount.get();
+    }
+
+    /**
+     * @return how many notifications without texts in extras have not
+     * loaded the texts from views (yet).
+     */
+    public static int getTextsFromViewSkippedCount() {
+        return sTextsFromViewSkippedCount.get();
+    }
+
+    /**
+     * @return how many notifications have loaded the icon.
+     */
+    public static int getIconsLoadedCount() {
+        return sIconsLoadedCount.get();
+    }
+
+    /**
+     * @return how many notifications have loaded the brand color.
+     */
+    public static int getBrandColorsLoadedCount() {
+        return sBrandColorsLoadedCount.get();
+    }
+
+    /**
+     * @return how many notifications have applied the emoticons to the texts.
+     */
+    public static int getTextsFormattedCount() {
+        return sTextsFormattedCount.get();
+    }
+
 }
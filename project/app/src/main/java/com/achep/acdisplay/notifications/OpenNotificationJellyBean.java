@@ -25,6 +25,7 @@ import android.support.annotation.Nullable;
 import android.widget.RemoteViews;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
 
 /**
  * @author Artem Chepurnoy
@@ -34,6 +35,8 @@ class OpenNotificationJellyBean extends OpenNotification {
 
     @NonNull
     private String mPackageName;
+    @Nullable
+    private IdentityKey mIdentityKey;
 
     OpenNotificationJellyBean(@NonNull Notification n) {
         super(null, n);
@@ -48,6 +51,9 @@ class OpenNotificationJellyBean extends OpenNotification {
         mPackageName = rvs != null ? rvs.getPackage() : "!2#$%^&*()";
 
         super.load(context);
+
+        // Freeze the key now, when the title is known.
+        mIdentityKey = createIdentityKey();
     }
 
     //-- COMPARING INSTANCES --------------------------------------------------
@@ -94,6 +100,89 @@ class OpenNotificationJellyBean extends OpenNotification {
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Object getIdentityKey() {
+        if (mIdentityKey == null) mIdentityKey = createIdentityKey();
+        return mIdentityKey;
+    }
+
+    /**
+     * The key is created once, and re-created only when the notification
+     * is {@link #load(Context) loaded}: it doesn't follow later changes
+     * of the title, so the notification stays at the same place of the index.
+     */
+    @NonNull
+    private IdentityKey createIdentityKey() {
+        RemoteViews cv = getNotification().contentView;
+        return new IdentityKey(
+                cv != null ? cv.getLayoutId() : 0,
+                getNotification().ledARGB,
+                getPackageName(),
+                titleText);
+    }
+
+    /**
+     * The tuple of fields that are compared by {@link #hasIdenticalIds(OpenNotification)}.
+     * Note that the layout id is always compared here, which makes a notification
+     * with no content view different from a notification with it.
+     */
+    private static final class IdentityKey {
+
+        private final int layoutId;
+        private final int ledARGB;
+        @NonNull
+        private final String packageName;
+        @Nullable
+        private final String title;
+
+        IdentityKey(int layoutId, int ledARGB,
+                    @NonNull String packageName,
+                    @Nullable CharSequence title) {
+            this.layoutId = layoutId;
+            this.ledARGB = ledARGB;
+            this.packageName = packageName;
+            this.title = title != null ? title.toString() : null;
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(11, 41)
+                    .append(layoutId)
+                    .append(ledARGB)
+                    .append(packageName)
+                    .append(title)
+                    .toHashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof IdentityKey)) return false;
+
+            IdentityKey key = (IdentityKey) o;
+            return new EqualsBuilder()
+                    .append(layoutId, key.layoutId)
+                    .append(ledARGB, key.ledARGB)
+                    .append(packageName, key.packageName)
+                    .append(title, key.title)
+                    .isEquals();
+        }
+
+        /**
+         * @return the persistent form of the key.
+         * @see SnoozeStore
+         */
+        @Override
+        public String toString() {
+            return packageName + "|" + layoutId + "|" + ledARGB + "|" + title;
+        }
+
+    }
+
     //-- OTHER ----------------------------------------------------------------
 
     /**
@@ -33,6 +33,9 @@ import org.apache.commons.lang.builder.EqualsBuilder;
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
 class OpenNotificationJellyBeanMR2 extends OpenNotification {
 
+    @Nullable
+    private String mIdentityKey;
+
     OpenNotificationJellyBeanMR2(@NonNull StatusBarNotification sbn, @NonNull Notification n) {
         super(sbn, n);
     }
@@ -80,6 +83,19 @@ class OpenNotificationJellyBeanMR2 extends OpenNotification {
                 .isEquals();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Object getIdentityKey() {
+        if (mIdentityKey == null) {
+            StatusBarNotification sbn = getStatusBarNotification();
+            mIdentityKey = getPackageName() + "|" + sbn.getId() + "|" + sbn.getTag();
+        }
+        return mIdentityKey;
+    }
+
     /**
      * {@inheritDoc}
      */
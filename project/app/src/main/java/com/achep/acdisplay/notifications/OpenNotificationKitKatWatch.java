@@ -51,4 +51,13 @@ class OpenNotificationKitKatWatch extends OpenNotificationJellyBeanMR2 {
                 .isEquals();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Object getIdentityKey() {
+        return getStatusBarNotification().getKey();
+    }
+
 }
@@ -37,8 +37,34 @@ class OpenNotificationLollipop extends OpenNotificationKitKatWatch {
 
     private static final String TAG = "OpenNotificationLp";
 
+    // Cached reflective accessors; used only if the public
+    // API is broken for some reason.
+    private static Method sIsGroupChildMethod;
+    private static Method sIsGroupSummaryMethod;
+    private static boolean sMethodsResolved;
+
+    private final boolean mGroupChild;
+    private final boolean mGroupSummary;
+
     OpenNotificationLollipop(@NonNull StatusBarNotification sbn, @NonNull Notification n) {
         super(sbn, n);
+
+        // Same as hidden Notification#isGroupChild() and
+        // Notification#isGroupSummary(), but without reflections.
+        boolean groupChild, groupSummary;
+        try {
+            boolean grouped = n.getGroup() != null;
+            boolean summary = (n.flags & Notification.FLAG_GROUP_SUMMARY) != 0;
+            groupChild = grouped && !summary;
+            groupSummary = grouped && summary;
+        } catch (NoSuchMethodError e) {
+            Log.w(TAG, "Falling back to reflections to check the notification\'s group.");
+            groupChild = invokeBoolean(n, getIsGroupChildMethod());
+            groupSummary = invokeBoolean(n, getIsGroupSummaryMethod());
+        }
+
+        mGroupChild = groupChild;
+        mGroupSummary = groupSummary;
     }
 
     @Nullable
@@ -51,16 +77,7 @@ class OpenNotificationLollipop extends OpenNotificationKitKatWatch {
      */
     @Override
     public boolean isGroupChild() {
-        try {
-            Method method = Notification.class.getDeclaredMethod("isGroupChild");
-            method.setAccessible(true);
-            return (boolean) method.invoke(getNotification());
-        } catch (NoSuchMethodException
-                | InvocationTargetException
-                | IllegalAccessException e) {
-            Log.e(TAG, "Failed to check for group child.");
-        }
-        return false;
+        return mGroupChild;
     }
 
     /**
@@ -68,14 +85,57 @@ class OpenNotificationLollipop extends OpenNotificationKitKatWatch {
      */
     @Override
     public boolean isGroupSummary() {
+        return mGroupSummary;
+    }
+
+    //-- REFLECTIONS ----------------------------------------------------------
+
+    @Nullable
+    private static synchronized Method getIsGroupChildMethod() {
+        resolveMethods();
+        return sIsGroupChildMethod;
+    }
+
+    @Nullable
+    private static synchronized Method getIsGroupSummaryMethod() {
+        resolveMethods();
+        return sIsGroupSummaryMethod;
+    }
+
+    private static void resolveMethods() {
+        if (sMethodsResolved) return;
+        sMethodsResolved = true;
+        sIsGroupChildMethod = findMethod(Notification.class, "isGroupChild");
+        sIsGroupSummaryMethod = findMethod(Notification.class, "isGroupSummary");
+    }
+
+    /**
+     * @return the accessible declared method of the class,
+     * or {@code null} if not found.
+     */
+    @Nullable
+    static Method findMethod(@NonNull Class<?> clazz, @NonNull String name) {
         try {
-            Method method = Notification.class.getDeclaredMethod("isGroupSummary");
+            Method method = clazz.getDeclaredMethod(name);
             method.setAccessible(true);
-            return (boolean) method.invoke(getNotification());
-        } catch (NoSuchMethodException
-                | InvocationTargetException
-                | IllegalAccessException e) {
-            Log.e(TAG, "Failed to check for group summary.");
+            return method;
+        } catch (NoSuchMethodException e) {
+            Log.e(TAG, "Failed to find the " + name + " method.");
+            return null;
+        }
+    }
+
+    /**
+     * @return the result of the method, or {@code false} if there's
+     * no method or it has failed.
+     */
+    static boolean invokeBoolean(@NonNull Object object, @Nullable Method method) {
+        if (method != null) {
+            try {
+                return (boolean) method.invoke(object);
+            } catch (InvocationTargetException | IllegalAccessException e) {
+                Log.e(TAG, "Failed to invoke the " + method.getName() + " method.");
+            }
         }
         return false;
     }
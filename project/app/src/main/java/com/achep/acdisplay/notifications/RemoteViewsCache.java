@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.achep.base.interfaces.IOnLowMemory;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The pool of inflated layouts of notifications' {@link android.widget.RemoteViews}, keyed
+ * by the package name and the layout id. Legacy notifications are updated often with the
+ * same layout, so the {@link Extractor} only reapplies the remote views to a pooled
+ * layout and reads its known text views, instead of inflating and walking the layout
+ * from scratch every time.
+ * <p/>
+ * A layout is taken out of the pool while it's in use, so the pool is safe to use from
+ * different threads. Remote views set only what they change, so the text views are
+ * {@link Layout#reset() reset} to their inflated state before going back to the pool.
+ *
+ * @author Artem Chepurnoy
+ * @see #getInstance()
+ */
+public final class RemoteViewsCache extends LruCache<String, RemoteViewsCache.Layout>
+        implements IOnLowMemory {
+
+    private static final String TAG = "RemoteViewsCache";
+
+    /**
+     * The maximum number of pooled layouts.
+     */
+    private static final int MAX_SIZE = 8;
+
+    private static final RemoteViewsCache sCache = new RemoteViewsCache(MAX_SIZE);
+
+    private int mReusedCount;
+    private int mInflatedCount;
+
+    /**
+     * The inflated layout of remote views with an index of its text views.
+     *
+     * @author Artem Chepurnoy
+     */
+    public static final class Layout {
+
+        @NonNull
+        final String packageName;
+        final int layoutId;
+
+        /**
+         * The context of the package, that the layout is inflated with.
+         */
+        @NonNull
+        final Context context;
+        @NonNull
+        final ViewGroup view;
+
+        /**
+         * All text views of the layout in order of traversal.
+         */
+        @NonNull
+        final TextView[] textViews;
+
+        /**
+         * The inflated visibility and clickability of the {@link #textViews}.
+         *
+         * @see #reset()
+         */
+        @NonNull
+        private final int[] visibilities;
+        @NonNull
+        private final boolean[] clickables;
+
+        /**
+         * The list to filter the {@link #textViews} in, so
+         * extracting doesn't allocate one.
+         */
+        @NonNull
+        final ArrayList<TextView> candidates;
+
+        private Layout(@NonNull Context context, @NonNull String packageName, int layoutId,
+                       @NonNull ViewGroup view, @NonNull ArrayList<TextView> textViews) {
+            this.packageName = packageName;
+            this.layoutId = layoutId;
+            this.context = context;
+            this.view = view;
+            this.textViews = textViews.toArray(new TextView[textViews.size()]);
+            this.candidates = textViews;
+
+            final int length = this.textViews.length;
+            visibilities = new int[length];
+            clickables = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                visibilities[i] = this.textViews[i].getVisibility();
+                clickables[i] = this.textViews[i].isClickable();
+            }
+        }
+
+        /**
+         * Resets the texts, visibility and clickability of the {@link #textViews}, so
+         * the next remote views don't inherit them from the previous ones.
+         */
+        void reset() {
+            for (int i = 0; i < textViews.length; i++) {
+                TextView textView = textViews[i];
+                textView.setText(null);
+                textView.setVisibility(visibilities[i]);
+                textView.setClickable(clickables[i]);
+            }
+        }
+
+        /**
+         * Fills the {@link #candidates} with all {@link #textViews}.
+         */
+        @NonNull
+        ArrayList<TextView> resetCandidates() {
+            candidates.clear();
+            for (TextView textView : textViews) candidates.add(textView);
+            return candidates;
+        }
+
+    }
+
+    /**
+     * @return the process-wide pool of layouts. Use its {@link #getReusedCount()}
+     * and {@link #getInflatedCount()} for tuning.
+     */
+    @NonNull
+    public static RemoteViewsCache getInstance() {
+        return sCache;
+    }
+
+    private RemoteViewsCache(int maxSize) {
+        super(maxSize);
+    }
+
+    @NonNull
+    private static String createKey(@NonNull String packageName, int layoutId) {
+        return packageName + "/" + layoutId;
+    }
+
+    /**
+     * Takes the layout out of the pool. Put it back with {@link #recycle(Layout)}
+     * after use.
+     *
+     * @return the pooled layout, or {@code null} if there's no one.
+     * @see #inflate(Context, String, int)
+     */
+    @Nullable
+    Layout obtain(@NonNull String packageName, int layoutId) {
+        Layout layout = remove(createKey(packageName, layoutId));
+        synchronized (this) {
+            if (layout != null) {
+                mReusedCount++;
+            } else mInflatedCount++;
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the layout to the pool. Do not recycle the layout if
+     * reapplying to it has failed: its state is unknown.
+     */
+    void recycle(@NonNull Layout layout) {
+        layout.reset();
+        put(createKey(layout.packageName, layout.layoutId), layout);
+    }
+
+    /**
+     * Inflates the layout and indexes its text views. This doesn't touch the pool.
+     *
+     * @param context the context of the package.
+     * @throws RuntimeException if inflating fails.
+     */
+    @NonNull
+    static Layout inflate(@NonNull Context context, @NonNull String packageName, int layoutId) {
+        LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        ViewGroup view = (ViewGroup) inflater.inflate(layoutId, null);
+        ArrayList<TextView> textViews = new ArrayList<>();
+        findTextViews(view, textViews);
+        return new Layout(context, packageName, layoutId, view, textViews);
+    }
+
+    private static void findTextViews(@NonNull ViewGroup viewGroup,
+                                      @NonNull ArrayList<TextView> out) {
+        final int childCount = viewGroup.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View child = viewGroup.getChildAt(i);
+            if (child instanceof TextView) {
+                out.add((TextView) child);
+            } else if (child instanceof ViewGroup) {
+                findTextViews((ViewGroup) child, out);
+            }
+        }
+    }
+
+    /**
+     * Drops all pooled layouts of the package. This should be
+     * called when the package is replaced or removed.
+     */
+    public void invalidate(@NonNull String packageName) {
+        for (Map.Entry<String, Layout> entry : snapshot().entrySet()) {
+            if (entry.getValue().packageName.equals(packageName)) {
+                remove(entry.getKey());
+            }
+        }
+        if (DEBUG) Log.d(TAG, "Invalidated the layouts of " + packageName);
+    }
+
+    /**
+     * Evicts all layouts.
+     */
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    /**
+     * Evicts all layouts, if the level is high enough.
+     *
+     * @see android.content.ComponentCallbacks2#onTrimMemory(int)
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            evictAll();
+        }
+    }
+
+    /**
+     * @return how many times a pooled layout was reused.
+     */
+    public synchronized int getReusedCount() {
+        return mReusedCount;
+    }
+
+    /**
+     * @return how many times there was no layout to reuse.
+     */
+    public synchronized int getInflatedCount() {
+        return mInflatedCount;
+    }
+
+}
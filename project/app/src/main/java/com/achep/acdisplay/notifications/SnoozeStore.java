@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.achep.acdisplay.receiver.SnoozeReceiver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The snoozed notifications, keyed by their {@link OpenNotification#getIdentityKey()
+ * identity}. Snoozes are stored on disk with their deadlines in wall-clock time, and
+ * indexed by the deadline, so only one alarm, at the earliest deadline, is scheduled.
+ *
+ * @author Artem Chepurnoy
+ * @see SnoozeReceiver
+ */
+public final class SnoozeStore {
+
+    private static final String TAG = "SnoozeStore";
+
+    private static final String PREF_NAME = "snoozes";
+
+    private static SnoozeStore sStore;
+
+    @NonNull
+    private final HashMap<String, Snooze> mSnoozes = new HashMap<>();
+    @NonNull
+    private final TreeSet<Snooze> mDeadlines = new TreeSet<>();
+    private boolean mLoaded;
+
+    /**
+     * The snoozed notification's key with its deadline.
+     *
+     * @author Artem Chepurnoy
+     */
+    private static final class Snooze implements Comparable<Snooze> {
+
+        @NonNull
+        final String key;
+        final long deadline;
+
+        Snooze(@NonNull String key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(@NonNull Snooze another) {
+            if (deadline != another.deadline) return deadline < another.deadline ? -1 : 1;
+            return key.compareTo(another.key);
+        }
+
+    }
+
+    @NonNull
+    public static synchronized SnoozeStore getInstance() {
+        if (sStore == null) {
+            sStore = new SnoozeStore();
+        }
+        return sStore;
+    }
+
+    private SnoozeStore() { /* empty */ }
+
+    /**
+     * @return the key of the notification to store its snooze by.
+     */
+    @NonNull
+    static String getKey(@NonNull OpenNotification n) {
+        return n.getIdentityKey().toString();
+    }
+
+    @NonNull
+    private SharedPreferences getSharedPreferences(@NonNull Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Loads the snoozes from disk, if not loaded yet, and
+     * schedules the alarm at the earliest deadline.
+     */
+    void ensureLoaded(@NonNull Context context) {
+        synchronized (this) {
+            if (mLoaded) return;
+            mLoaded = true;
+
+            for (Map.Entry<String, ?> entry : getSharedPreferences(context).getAll().entrySet()) {
+                if (entry.getValue() instanceof Long) {
+                    put(new Snooze(entry.getKey(), (Long) entry.getValue()));
+                }
+            }
+        }
+        scheduleAlarm(context);
+    }
+
+    private void put(@NonNull Snooze snooze) {
+        Snooze old = mSnoozes.put(snooze.key, snooze);
+        if (old != null) mDeadlines.remove(old);
+        mDeadlines.add(snooze);
+    }
+
+    /**
+     * Snoozes the notification until the deadline.
+     *
+     * @param deadline the deadline in {@link System#currentTimeMillis()} time base.
+     */
+    void snooze(@NonNull Context context, @NonNull OpenNotification n, long deadline) {
+        final String key = getKey(n);
+        ensureLoaded(context);
+        synchronized (this) {
+            put(new Snooze(key, deadline));
+        }
+        getSharedPreferences(context).edit().putLong(key, deadline).apply();
+        scheduleAlarm(context);
+        if (DEBUG) Log.d(TAG, "Snoozed " + key + " until " + deadline);
+    }
+
+    /**
+     * @return {@code true} if the notification is snoozed and should not
+     * be shown, {@code false} otherwise.
+     */
+    synchronized boolean isSnoozed(@NonNull OpenNotification n) {
+        if (mSnoozes.isEmpty()) return false;
+        Snooze snooze = mSnoozes.get(getKey(n));
+        return snooze != null && snooze.deadline > System.currentTimeMillis();
+    }
+
+    /**
+     * Removes the snoozes whose deadlines have passed, and schedules
+     * the alarm at the next deadline.
+     *
+     * @return the keys of expired snoozes.
+     */
+    @NonNull
+    ArrayList<String> pollExpired(@NonNull Context context) {
+        ArrayList<String> keys = new ArrayList<>();
+        ensureLoaded(context);
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            while (!mDeadlines.isEmpty() && mDeadlines.first().deadline <= now) {
+                Snooze snooze = mDeadlines.pollFirst();
+                mSnoozes.remove(snooze.key);
+                keys.add(snooze.key);
+            }
+        }
+
+        if (!keys.isEmpty()) {
+            SharedPreferences.Editor editor = getSharedPreferences(context).edit();
+            for (String key : keys) editor.remove(key);
+            editor.apply();
+        }
+        scheduleAlarm(context);
+        return keys;
+    }
+
+    /**
+     * Sets the alarm at the earliest deadline, or cancels it if
+     * there are no snoozes.
+     */
+    private void scheduleAlarm(@NonNull Context context) {
+        final long deadline;
+        synchronized (this) {
+            deadline = mDeadlines.isEmpty() ? 0 : mDeadlines.first().deadline;
+        }
+
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        Intent intent = new Intent(context, SnoozeReceiver.class);
+        PendingIntent pi = PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+        if (deadline == 0) {
+            am.cancel(pi);
+        } else am.set(AlarmManager.RTC, deadline, pi);
+    }
+
+}
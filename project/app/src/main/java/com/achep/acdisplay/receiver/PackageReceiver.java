@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import com.achep.acdisplay.graphics.BrandColors;
+import com.achep.acdisplay.graphics.IconFactory;
+import com.achep.acdisplay.notifications.ExtractionProfiles;
+import com.achep.acdisplay.notifications.RemoteViewsCache;
+
+/**
+ * Invalidates the per-package caches when a package
+ * is replaced or removed.
+ *
+ * @author Artem Chepurnoy
+ */
+public class PackageReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Uri data = intent.getData();
+        if (data == null) return;
+        String packageName = data.getSchemeSpecificPart();
+        String action = intent.getAction();
+        if (packageName == null || action == null) return;
+
+        switch (action) {
+            case Intent.ACTION_PACKAGE_REPLACED:
+            case Intent.ACTION_PACKAGE_CHANGED:
+            case Intent.ACTION_PACKAGE_REMOVED:
+                BrandColors.getInstance().invalidate(context, packageName);
+                IconFactory.getCache().invalidate(packageName);
+                RemoteViewsCache.getInstance().invalidate(packageName);
+                ExtractionProfiles.getInstance().invalidate(context, packageName);
+                break;
+        }
+    }
+
+}
@@ -29,12 +29,12 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.SystemClock;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceFragment;
+import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -51,6 +51,7 @@ import android.widget.TextView;
 import com.achep.acdisplay.blacklist.AppConfig;
 import com.achep.acdisplay.blacklist.Blacklist;
 import com.achep.acdisplay.ui.fragments.BlacklistAppFragment;
+import com.achep.base.async.Worker;
 import com.achep.base.utils.MathUtils;
 import com.achep.headsup.R;
 
@@ -89,6 +90,21 @@ public class BlacklistActivity extends PreferenceActivity {
     // preferences
     private static final String PREF_KEY_SHOW_SYSTEM_APPS = "show_system_apps";
 
+    /**
+     * The worker of the apps' icons. Hundreds of icons may be loaded at once,
+     * so keep them off the {@link Worker#getInstance() shared worker} of the
+     * notifications.
+     */
+    private static Worker sIconsWorker;
+
+    @NonNull
+    private static synchronized Worker getIconsWorker() {
+        if (sIconsWorker == null) {
+            sIconsWorker = new Worker(TAG, 1, 8);
+        }
+        return sIconsWorker;
+    }
+
     private String mFragmentClass;
     private int mTopLevelHeaderId;
     private Header mFirstHeader;
@@ -448,7 +464,6 @@ public class BlacklistActivity extends PreferenceActivity {
         private final PackageManager mPackageManager;
         private final Drawable mDefaultImg;
         private final List<Header> mHeaders;
-        private LoadIconsTask mLoadIconsTask;
 
         private final ConcurrentHashMap<String, Drawable> mIcons;
 
@@ -609,29 +624,29 @@ public class BlacklistActivity extends PreferenceActivity {
          * Update the list of apps' icons
          */
         public void loadIcons() {
-            if (mLoadIconsTask != null && !mLoadIconsTask.getStatus()
-                    .equals(AsyncTask.Status.FINISHED)) {
-                mLoadIconsTask.cancel = true;
-                mLoadIconsTask.cancel(false);
-            }
-            mLoadIconsTask = new LoadIconsTask();
-            mLoadIconsTask.execute(mHeaders.toArray(new Header[mHeaders.size()]));
+            // Newer task supersedes the older one.
+            Header[] headers = mHeaders.toArray(new Header[mHeaders.size()]);
+            getIconsWorker().submit(this, Worker.PRIORITY_LOW, new LoadIconsTask(headers));
         }
 
         /**
          * An asynchronous task to load the icons & titles of the installed applications.
          */
         // TODO: Maybe use SoftReference<> to save some memory.
-        private class LoadIconsTask extends AsyncTask<Header, Void, Void> {
+        private class LoadIconsTask extends Worker.Job<Void> {
 
-            private volatile long time;
-            private volatile boolean cancel;
+            private final Header[] headers;
+            private long time;
+
+            public LoadIconsTask(@NonNull Header[] headers) {
+                this.headers = headers;
+            }
 
             @Override
-            protected Void doInBackground(Header... headers) {
+            protected Void doInBackground() {
                 for (Header header : headers) {
                     try {
-                        if (cancel) return null;
+                        if (isCancelled()) return null;
 
                         String packageName = "" + header.summary;
                         if (mIcons.containsKey(packageName)) {
@@ -655,13 +670,12 @@ public class BlacklistActivity extends PreferenceActivity {
             }
 
             @Override
-            protected void onProgressUpdate(Void... progress) {
+            protected void onProgressUpdate() {
                 notifyDataSetChanged();
             }
 
             @Override
             protected void onPostExecute(Void aVoid) {
-                super.onPostExecute(aVoid);
                 notifyDataSetChanged();
             }
         }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.ui.widgets.notification;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Distributes the limited number of lines between the messages of notification: each
+ * message gets one line, and free lines go to the messages with the longest text per
+ * line. The arrays are reused, so laying out the messages of the same notification
+ * again doesn't allocate anything.
+ *
+ * @author Artem Chepurnoy
+ */
+final class MessageLinesLayout {
+
+    @NonNull
+    private int[] mMaxLines = new int[0];
+    @NonNull
+    private int[] mLengths = new int[0];
+    private int mCount;
+
+    /**
+     * Lays out given messages.
+     *
+     * @param maxLines the total number of lines.
+     * @see #getCount()
+     * @see #getMaxLines(int)
+     */
+    void layout(@NonNull CharSequence[] messages, int maxLines) {
+        final int length = messages.length;
+        if (mMaxLines.length < length) {
+            mMaxLines = new int[length];
+            mLengths = new int[length];
+        }
+
+        int freeLines = maxLines;
+        mCount = Math.min(length, freeLines);
+        if (maxLines > length) {
+
+            // Initial setup.
+            Arrays.fill(mMaxLines, 0, length, 1);
+            freeLines -= length;
+
+            // Build list of lengths, so we don't have
+            // to recalculate it every time.
+            for (int i = 0; i < length; i++) {
+                mLengths[i] = messages[i].length();
+            }
+
+            while (freeLines > 0) {
+                int pos = 0;
+                float a = 0;
+                for (int i = 0; i < length; i++) {
+                    final float k = (float) mLengths[i] / mMaxLines[i];
+                    if (k > a) {
+                        a = k;
+                        pos = i;
+                    }
+                }
+                mMaxLines[pos]++;
+                freeLines--;
+            }
+        } else {
+            // Show first messages.
+            Arrays.fill(mMaxLines, 0, mCount, 1);
+        }
+    }
+
+    /**
+     * @return the number of messages to show.
+     */
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the maximum number of lines of the message.
+     */
+    int getMaxLines(int i) {
+        return mMaxLines[i];
+    }
+
+}
@@ -52,8 +52,6 @@ import com.achep.base.Device;
 import com.achep.base.utils.ViewUtils;
 import com.achep.headsup.R;
 
-import java.util.Arrays;
-
 /**
  * Simple notification widget that shows the title of notification,
  * its message, icon, actions and more.
@@ -62,6 +60,14 @@ import java.util.Arrays;
  */
 public class NotificationWidget extends LinearLayout implements INotificatiable {
 
+    /**
+     * The span to highlight the first letter of messages. Spans have no
+     * state, so one is shared by all messages.
+     */
+    private static final UnderlineSpan UNDERLINE_SPAN = new UnderlineSpan();
+
+    @NonNull
+    private final MessageLinesLayout mMessageLinesLayout = new MessageLinesLayout();
     private final int mMessageLayoutRes;
     private final int mMessageMaxLines;
     private final int mActionLayoutRes;
@@ -298,7 +304,7 @@ public class NotificationWidget extends LinearLayout implements INotificatiable
      * @param lines an array of the lines of message.
      */
     @SuppressLint("CutPasteId")
-    private void setMessageLines(@Nullable CharSequence[] lines) {
+    void setMessageLines(@Nullable CharSequence[] lines) {
         if (lines == null) {
             // Hide message container. Do not delete all messages
             // because we may re-use them later.
@@ -306,57 +312,11 @@ public class NotificationWidget extends LinearLayout implements INotificatiable
             return;
         }
 
-        int[] maxlines;
-
-        final int length = lines.length;
-        maxlines = new int[length];
-
-        int freeLines = mMessageMaxLines;
-        int count = Math.min(length, freeLines);
-        if (mMessageMaxLines > length) {
-
-            // Initial setup.
-            Arrays.fill(maxlines, 1);
-            freeLines -= length;
-
-            // Build list of lengths, so we don't have
-            // to recalculate it every time.
-            int[] msgLengths = new int[length];
-            for (int i = 0; i < length; i++) {
-                assert lines[i] != null;
-                msgLengths[i] = lines[i].length();
-            }
-
-            while (freeLines > 0) {
-                int pos = 0;
-                float a = 0;
-                for (int i = 0; i < length; i++) {
-                    final float k = (float) msgLengths[i] / maxlines[i];
-                    if (k > a) {
-                        a = k;
-                        pos = i;
-                    }
-                }
-                maxlines[pos]++;
-                freeLines--;
-            }
-        } else {
-            // Show first messages.
-            for (int i = 0; freeLines > 0; freeLines--, i++) {
-                maxlines[i] = 1;
-            }
-        }
-
-        View[] views = new View[count];
-
-        // Find available views.
-        int childCount = mMessageContainer.getChildCount();
-        int a = Math.min(childCount, count);
-        for (int i = 0; i < a; i++) {
-            views[i] = mMessageContainer.getChildAt(i);
-        }
+        mMessageLinesLayout.layout(lines, mMessageMaxLines);
+        final int count = mMessageLinesLayout.getCount();
 
         // Remove redundant views.
+        final int childCount = mMessageContainer.getChildCount();
         for (int i = childCount - 1; i >= count; i--) {
             mMessageContainer.removeViewAt(i);
         }
@@ -365,7 +325,7 @@ public class NotificationWidget extends LinearLayout implements INotificatiable
 
         LayoutInflater inflater = null;
         for (int i = 0; i < count; i++) {
-            View root = views[i];
+            View root = i < childCount ? mMessageContainer.getChildAt(i) : null;
 
             if (root == null) {
                 // Initialize layout inflater only when we really need it.
@@ -391,7 +351,7 @@ public class NotificationWidget extends LinearLayout implements INotificatiable
             boolean isClear = Character.isLetter(symbol) || Character.isDigit(symbol);
             if (highlightFirstLetter && isClear) {
                 SpannableString spannable = new SpannableString(lines[i]);
-                spannable.setSpan(new UnderlineSpan(), 0, 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                spannable.setSpan(UNDERLINE_SPAN, 0, 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
                 text = spannable;
             } else {
                 text = lines[i];
@@ -401,7 +361,7 @@ public class NotificationWidget extends LinearLayout implements INotificatiable
             TextView textView = root instanceof TextView
                     ? (TextView) root
                     : (TextView) root.findViewById(R.id.message);
-            textView.setMaxLines(maxlines[i]);
+            textView.setMaxLines(mMessageLinesLayout.getMaxLines(i));
             textView.setText(text);
         }
     }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.async;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+/**
+ * The thread which runs with the {@link Process#THREAD_PRIORITY_BACKGROUND background}
+ * priority, so it never competes with the UI thread.
+ *
+ * @author Artem Chepurnoy
+ */
+public class BackgroundThread extends Thread {
+
+    public BackgroundThread(@NonNull Runnable runnable, @NonNull String name) {
+        super(runnable, name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        super.run();
+    }
+
+}
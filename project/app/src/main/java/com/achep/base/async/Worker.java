@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.async;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The pool of {@link BackgroundThread background threads} with a bounded priority
+ * queue of {@link Job jobs}. Unlike the {@link android.os.AsyncTask}'s pool, it's not
+ * shared with every other task of the process.
+ * <p/>
+ * Jobs may have a key: a newer job cancels the pending job with the same key
+ * before it starts, and makes the running one to not deliver its result.
+ *
+ * @author Artem Chepurnoy
+ * @see #getInstance()
+ */
+public final class Worker {
+
+    private static final String TAG = "Worker";
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private static Worker sWorker;
+
+    @NonNull
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final PriorityQueue<Job> mQueue;
+    @NonNull
+    private final HashMap<Object, Job> mKeys = new HashMap<>();
+    private final int mCapacity;
+    private long mSequence;
+
+    // Metrics
+    private int mMaxDepth;
+    private int mSupersededCount;
+    private int mRejectedCount;
+    private int mCompletedCount;
+    private long mTotalLatencyNanos;
+    private long mTotalRunNanos;
+
+    /**
+     * The job of the {@link Worker}.
+     *
+     * @author Artem Chepurnoy
+     */
+    public static abstract class Job<R> {
+
+        @Nullable
+        private Object mKey;
+        private int mPriority;
+        private long mSequence;
+        private long mEnqueuedAt;
+        private long mStarted;
+        private Worker mWorker;
+
+        private volatile boolean mCancelled;
+
+        /**
+         * Runs on a background thread. Check {@link #isCancelled()} from
+         * time to time, if it's long.
+         */
+        @Nullable
+        protected abstract R doInBackground();
+
+        /**
+         * Runs on the main thread after {@link #doInBackground()},
+         * if the job is not cancelled.
+         */
+        protected void onPostExecute(@Nullable R result) { /* empty */ }
+
+        /**
+         * Runs on the main thread, if the job is cancelled before
+         * it's started, or if {@link #doInBackground()} has failed.
+         *
+         * @see #cancel()
+         */
+        protected void onCancelled() { /* empty */ }
+
+        /**
+         * Runs on the main thread after {@link #publishProgress()},
+         * if the job is not cancelled.
+         */
+        protected void onProgressUpdate() { /* empty */ }
+
+        /**
+         * Schedules the {@link #onProgressUpdate()} on the main thread.
+         */
+        protected final void publishProgress() {
+            mWorker.mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) onProgressUpdate();
+                }
+            });
+        }
+
+        /**
+         * Cancels the job: removes it from the queue if it's not started yet,
+         * or prevents it from delivering the result otherwise.
+         */
+        public final void cancel() {
+            if (mWorker != null) {
+                mWorker.cancel(this);
+            } else mCancelled = true;
+        }
+
+        public final boolean isCancelled() {
+            return mCancelled;
+        }
+
+    }
+
+    @NonNull
+    public static synchronized Worker getInstance() {
+        if (sWorker == null) {
+            sWorker = new Worker(TAG, DEFAULT_THREADS, DEFAULT_CAPACITY);
+        }
+        return sWorker;
+    }
+
+    /**
+     * @param name     the name of threads.
+     * @param threads  the number of threads.
+     * @param capacity the maximum number of pending jobs, after which
+     *                 the least important jobs are rejected.
+     */
+    public Worker(@NonNull String name, int threads, int capacity) {
+        mCapacity = capacity;
+        mQueue = new PriorityQueue<>(capacity, new Comparator<Job>() {
+            @Override
+            public int compare(Job lhs, Job rhs) {
+                if (lhs.mPriority != rhs.mPriority) {
+                    return rhs.mPriority - lhs.mPriority;
+                }
+                return lhs.mSequence < rhs.mSequence ? -1 : 1;
+            }
+        });
+
+        Runnable loop = new Runnable() {
+            @Override
+            public void run() {
+                //noinspection InfiniteLoopStatement
+                while (true) execute(take());
+            }
+        };
+        for (int i = 0; i < threads; i++) {
+            new BackgroundThread(loop, name + "#" + i).start();
+        }
+    }
+
+    /**
+     * Adds the job to the queue.
+     *
+     * @param key      the key of the job, or {@code null}. A newer job
+     *                 supersedes the older one with the same key.
+     * @param priority the priority of the job.
+     * @return the job itself.
+     * @see #PRIORITY_LOW
+     * @see #PRIORITY_NORMAL
+     * @see #PRIORITY_HIGH
+     */
+    @NonNull
+    public <J extends Job> J submit(@Nullable Object key, int priority, @NonNull J job) {
+        synchronized (this) {
+            job.mKey = key;
+            job.mPriority = priority;
+            job.mSequence = mSequence++;
+            job.mEnqueuedAt = System.nanoTime();
+            job.mWorker = this;
+
+            if (key != null) {
+                Job old = mKeys.put(key, job);
+                if (old != null) {
+                    cancel(old);
+                    mSupersededCount++;
+                }
+            }
+
+            if (mQueue.size() >= mCapacity && !rejectLeastImportant(job)) {
+                return job;
+            }
+
+            mQueue.add(job);
+            mMaxDepth = Math.max(mMaxDepth, mQueue.size());
+            notify();
+        }
+        return job;
+    }
+
+    /**
+     * Rejects the least important job to free a place for the new one.
+     *
+     * @return {@code false} if the new job itself is rejected.
+     */
+    private boolean rejectLeastImportant(@NonNull Job job) {
+        // The least important job is the oldest one of
+        // the lowest priority.
+        Job victim = job;
+        for (Job j : mQueue) {
+            if (j.mPriority < victim.mPriority || j.mPriority == victim.mPriority
+                    && j.mSequence < victim.mSequence) {
+                victim = j;
+            }
+        }
+
+        mRejectedCount++;
+        if (DEBUG) Log.w(TAG, "The queue is full: rejected a job of priority=" + victim.mPriority);
+
+        cancel(victim);
+        return victim != job;
+    }
+
+    /**
+     * Cancels the job and, if it's not started yet, removes it from the queue.
+     */
+    private synchronized void cancel(@NonNull final Job job) {
+        if (job.mCancelled) return;
+        job.mCancelled = true;
+        if (job.mKey != null && mKeys.get(job.mKey) == job) mKeys.remove(job.mKey);
+        if (mQueue.remove(job) || job.mStarted == 0) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    job.onCancelled();
+                }
+            });
+        }
+    }
+
+    @NonNull
+    private synchronized Job take() {
+        while (mQueue.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) { /* keep waiting */ }
+        }
+
+        Job job = mQueue.poll();
+        job.mStarted = System.nanoTime();
+        mTotalLatencyNanos += job.mStarted - job.mEnqueuedAt;
+        return job;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(@NonNull final Job job) {
+        final long start = System.nanoTime();
+        Object result = null;
+        boolean failed = false;
+        try {
+            result = job.doInBackground();
+        } catch (RuntimeException | OutOfMemoryError e) {
+            // Do not let a single job to kill the thread.
+            Log.e(TAG, "Failed to run a job of priority=" + job.mPriority, e);
+            failed = true;
+        } finally {
+            synchronized (this) {
+                mTotalRunNanos += System.nanoTime() - start;
+                mCompletedCount++;
+                if (job.mKey != null && mKeys.get(job.mKey) == job) mKeys.remove(job.mKey);
+            }
+        }
+
+        if (failed) {
+            // Release the job, so its owner may try again.
+            if (!job.mCancelled) {
+                job.mCancelled = true;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        job.onCancelled();
+                    }
+                });
+            }
+            return;
+        }
+
+        if (job.mCancelled) return;
+        final Object r = result;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!job.mCancelled) job.onPostExecute(r);
+            }
+        });
+    }
+
+    //-- METRICS --------------------------------------------------------------
+
+    /**
+     * @return the current number of pending jobs.
+     */
+    public synchronized int getDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * @return the maximum number of pending jobs ever.
+     */
+    public synchronized int getMaxDepth() {
+        return mMaxDepth;
+    }
+
+    /**
+     * @return the average time between submitting a job and
+     * starting it, in microseconds.
+     */
+    public synchronized long getAverageLatency() {
+        return mCompletedCount == 0 ? 0 : mTotalLatencyNanos / mCompletedCount / 1000;
+    }
+
+    /**
+     * @return the average time of running a job, in microseconds.
+     */
+    public synchronized long getAverageRunTime() {
+        return mCompletedCount == 0 ? 0 : mTotalRunNanos / mCompletedCount / 1000;
+    }
+
+    /**
+     * @return the number of jobs cancelled by newer jobs with the same key.
+     */
+    public synchronized int getSupersededCount() {
+        return mSupersededCount;
+    }
+
+    /**
+     * @return the number of jobs rejected because of the full queue.
+     */
+    public synchronized int getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    /**
+     * @return the number of finished jobs.
+     */
+    public synchronized int getCompletedCount() {
+        return mCompletedCount;
+    }
+
+}
@@ -37,7 +37,6 @@ import com.achep.base.tests.Check;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -63,7 +62,7 @@ public abstract class ConfigBase implements
 
     protected static final String PREFERENCES_FILE_NAME = "config";
 
-    private SoftReference<HashMap<String, Option>> mHashMapRef = new SoftReference<>(null);
+    private HashMap<String, Option> mHashMap;
     private final ArrayList<WeakReference<OnConfigChangedListener>> mListenersRefs = new ArrayList<>(6);
     private Context mContext;
 
@@ -94,7 +93,8 @@ public abstract class ConfigBase implements
      */
     @Override
     public void onLowMemory() {
-        mHashMapRef.clear(); // it will be recreated in #getHashMap().
+        // The registry of options is tiny and its accessors are
+        // expensive to resolve, so keep it.
     }
 
     /**
@@ -137,18 +137,21 @@ public abstract class ConfigBase implements
 
     /**
      * @return the {@link java.util.HashMap HashMap} with option's keys as the keys, and
-     * its {@link Option data} as the values.
+     * its {@link Option data} as the values. All options are {@link Option#compile(Class, String) compiled}
+     * once, when the map is created.
      * @see #onCreateHashMap(java.util.HashMap)
      */
     @NonNull
-    public final HashMap<String, Option> getHashMap() {
-        HashMap<String, Option> hashMap = mHashMapRef.get();
-        if (hashMap == null) {
-            hashMap = new HashMap<>();
+    public final synchronized HashMap<String, Option> getHashMap() {
+        if (mHashMap == null) {
+            HashMap<String, Option> hashMap = new HashMap<>();
             onCreateHashMap(hashMap);
-            mHashMapRef = new SoftReference<>(hashMap);
+            for (Map.Entry<String, Option> entry : hashMap.entrySet()) {
+                entry.getValue().compile(getClass(), entry.getKey());
+            }
+            mHashMap = hashMap;
         }
-        return hashMap;
+        return mHashMap;
     }
 
     @NonNull
@@ -219,13 +222,7 @@ public abstract class ConfigBase implements
         if (DEBUG) Log.d(TAG, "Writing \"" + key + "=" + value + "\" to config.");
 
         // Set the current value to the field.
-        try {
-            Field field = getClass().getDeclaredField(option.fieldName);
-            field.setAccessible(true);
-            field.set(this, value);
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new IllegalStateException("");
-        }
+        option.writeToField(this, value);
 
         // Set the current value to the preferences file.
         SharedPreferences.Editor editor = getSharedPreferences(context).edit();
@@ -481,6 +478,12 @@ public abstract class ConfigBase implements
         private final int minSdkVersion;
         private final int maxSdkVersion;
 
+        // Compiled accessors
+        private String mKey;
+        private Field mField;
+        private Method mGetter;
+        private Method mSetter;
+
         public Option(@NonNull String fieldName,
                       @Nullable String setterName,
                       @Nullable String getterName,
@@ -534,62 +537,109 @@ public abstract class ConfigBase implements
                     .isEquals();
         }
 
+        /**
+         * Resolves the field and the methods of this option once, so reading
+         * and writing later don't need to look them up.
+         *
+         * @param configClass the class of config this option belongs to.
+         * @param key         the key of this option in the config.
+         * @throws RuntimeException if failed to resolve the accessors.
+         * @see ConfigBase#getHashMap()
+         */
+        private void compile(@NonNull Class<? extends ConfigBase> configClass, @NonNull String key) {
+            mKey = key;
+            try {
+                mField = configClass.getDeclaredField(fieldName);
+                mField.setAccessible(true);
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeException("Failed to access the " + clazz.getName() + "#" + fieldName + " field.");
+            }
+            if (getterName != null) try {
+                mGetter = configClass.getDeclaredMethod(getterName);
+                mGetter.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException("Failed to access the " + clazz.getName() + "#" + getterName + " method.");
+            }
+            if (setterName != null) try {
+                mSetter = configClass.getDeclaredMethod(setterName,
+                        Context.class, clazz,
+                        ConfigBase.OnConfigChangedListener.class);
+                mSetter.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException("Failed to access " + clazz.getName() + "#" + setterName + "(***) method.");
+            }
+        }
+
+        /**
+         * Makes sure that the option is {@link #compile(Class, String) compiled}.
+         */
+        private void ensureCompiled(@NonNull ConfigBase config) {
+            if (mField == null) config.getHashMap();
+            if (mField == null) {
+                throw new RuntimeException("You have forgotten to put #"
+                        + fieldName + " to the hash map of config.");
+            }
+        }
+
         @NonNull
         public final String getKey(@NonNull ConfigBase config) {
-            for (Map.Entry<String, Option> entry : config.getHashMap().entrySet()) {
-                if (entry.getValue().equals(this)) {
-                    return entry.getKey();
-                }
-            }
-            throw new RuntimeException();
+            ensureCompiled(config);
+            return mKey;
         }
 
         /**
          * Reads an option from given config instance.</br>
-         * Reading is done using reflections!
+         * Reading is done using the accessors resolved on
+         * {@link #compile(Class, String) compiling}.
          *
          * @param config a config to read from.
          * @throws RuntimeException if failed to read given config.
          */
         @NonNull
         public final Object read(@NonNull ConfigBase config) {
-            return getterName != null ? readFromGetter(config) : readFromField(config);
+            ensureCompiled(config);
+            return mGetter != null ? readFromGetter(config) : readFromField(config);
         }
 
         @NonNull
         private Object readFromField(@NonNull ConfigBase config) {
-            assert fieldName != null;
             try {
-                Field field = config.getClass().getDeclaredField(fieldName);
-                field.setAccessible(true);
-                return field.get(config);
-            } catch (NoSuchFieldException | IllegalAccessException e) {
+                return mField.get(config);
+            } catch (IllegalAccessException e) {
                 throw new RuntimeException("Failed to access the " + clazz.getName() + "#" + fieldName + " field.");
             }
         }
 
         @NonNull
         private Object readFromGetter(@NonNull ConfigBase config) {
-            assert getterName != null;
             try {
-                Method method = config.getClass().getDeclaredMethod(getterName);
-                method.setAccessible(true);
-                return method.invoke(config);
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
+                return mGetter.invoke(config);
+            } catch (InvocationTargetException | IllegalAccessException e) {
                 throw new RuntimeException("Failed to access the " + clazz.getName() + "#" + getterName + " method.");
             }
         }
 
+        private void writeToField(@NonNull ConfigBase config, @NonNull Object value) {
+            ensureCompiled(config);
+            try {
+                mField.set(config, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Failed to access the " + clazz.getName() + "#" + fieldName + " field.");
+            }
+        }
+
         /**
          * Writes new value to the option to given config instance.</br>
-         * Writing is done using reflections!
+         * Writing is done using the accessors resolved on
+         * {@link #compile(Class, String) compiling}.
          *
          * @param config a config to write to.
          * @throws RuntimeException if failed to read given config.
          */
         public final void write(@NonNull ConfigBase config, @NonNull Context context,
                                 @NonNull Object newValue, @Nullable OnConfigChangedListener listener) {
-            if (setterName != null) {
+            ensureCompiled(config);
+            if (mSetter != null) {
                 // Setter must be calling #writeFromMain by itself.
                 writeBySetter(config, context, newValue, listener);
                 return;
@@ -600,14 +650,9 @@ public abstract class ConfigBase implements
 
         private void writeBySetter(@NonNull ConfigBase config, @NonNull Context context,
                                    @NonNull Object newValue, @Nullable OnConfigChangedListener listener) {
-            assert setterName != null;
             try {
-                Method method = config.getClass().getDeclaredMethod(setterName,
-                        Context.class, clazz,
-                        ConfigBase.OnConfigChangedListener.class);
-                method.setAccessible(true);
-                method.invoke(config, context, newValue, listener);
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
+                mSetter.invoke(config, context, newValue, listener);
+            } catch (InvocationTargetException | IllegalAccessException e) {
                 throw new RuntimeException("Failed to access " + clazz.getName() + "#" + setterName + "(***) method.");
             }
         }
@@ -23,14 +23,21 @@ import android.content.SharedPreferences;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.achep.base.Build;
 import com.achep.base.interfaces.IOnLowMemory;
 import com.achep.base.interfaces.ISubscriptable;
+import com.achep.base.utils.xml.XmlUtils;
 
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -55,6 +62,7 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements
 
     private HashMap<V, Integer> mList;
     private ArrayList<Integer> mPlaceholder;
+    private Storage<V> mStorage;
 
     private ArrayList<OnSharedListChangedListener<V>> mListeners;
 
@@ -138,6 +146,200 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements
 
     }
 
+    /**
+     * The backend which stores the items of the list in private storage.
+     *
+     * @author Artem Chepurnoy
+     * @see #onCreateStorage()
+     * @see SharedList.PreferencesStorage
+     * @see SharedListLog
+     */
+    public static abstract class Storage<V> {
+
+        // Metrics
+        long mLoadTime;
+        long mBytesWritten;
+        int mEditsCount;
+
+        /**
+         * Restores previously saved items.
+         *
+         * @param out the array to put items to, where the key is the position of an item.
+         * @return the number of positions, including the empty ones.
+         */
+        protected abstract int load(@NonNull Context context, @NonNull Saver<V> saver,
+                                    @NonNull SparseArray<V> out);
+
+        /**
+         * Saves the object at given position.
+         *
+         * @param list the current state of the list (including this object).
+         */
+        protected abstract void put(@NonNull Context context, @NonNull Saver<V> saver,
+                                    @NonNull V object, int position,
+                                    @NonNull Map<V, Integer> list);
+
+        /**
+         * Marks given position as empty.
+         *
+         * @param list the current state of the list.
+         */
+        protected abstract void remove(@NonNull Context context, @NonNull Saver<V> saver,
+                                       int position, @NonNull Map<V, Integer> list);
+
+        /**
+         * Should be called on every edit with the number of bytes written
+         * to the disk.
+         */
+        protected final void onWritten(long bytes) {
+            mBytesWritten += bytes;
+            mEditsCount++;
+        }
+
+        /**
+         * @return the time of the last {@link #load(Context, Saver, SparseArray) load} in microseconds.
+         */
+        public long getLoadTime() {
+            return mLoadTime;
+        }
+
+        /**
+         * @return the number of bytes written to the disk by all edits.
+         * @see #getEditsCount()
+         */
+        public long getBytesWritten() {
+            return mBytesWritten;
+        }
+
+        /**
+         * @return the number of edits.
+         * @see #getBytesWritten()
+         */
+        public int getEditsCount() {
+            return mEditsCount;
+        }
+
+    }
+
+    /**
+     * The storage which keeps each field of each item under its own key in
+     * the {@link android.content.SharedPreferences}. Simple, but every edit
+     * rewrites the whole file.
+     *
+     * @author Artem Chepurnoy
+     */
+    public static class PreferencesStorage<V> extends Storage<V> {
+
+        @NonNull
+        private final String mFileName;
+        private int mNumber;
+
+        /**
+         * The application context to estimate the size of the file with, set in
+         * debug builds only.
+         *
+         * @see #getBytesWritten()
+         */
+        @Nullable
+        private Context mContext;
+
+        public PreferencesStorage(@NonNull String fileName) {
+            mFileName = fileName;
+        }
+
+        @NonNull
+        private SharedPreferences getSharedPreferences(@NonNull Context context) {
+            return context.getSharedPreferences(mFileName, Context.MODE_PRIVATE);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected int load(@NonNull Context context, @NonNull Saver<V> saver,
+                           @NonNull SparseArray<V> out) {
+            SharedPreferences prefs = getSharedPreferences(context);
+            mNumber = prefs.getInt(KEY_NUMBER, 0);
+            for (int i = 0; i < mNumber; i++) {
+                if (prefs.getBoolean(KEY_USED_ITEM + i, false)) {
+                    // Create previously saved object.
+                    out.put(i, saver.get(prefs, i));
+                }
+            }
+            return mNumber;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void put(@NonNull Context context, @NonNull Saver<V> saver,
+                           @NonNull V object, int position,
+                           @NonNull Map<V, Integer> list) {
+            SharedPreferences.Editor editor = saver
+                    .put(object, getSharedPreferences(context).edit(), position)
+                    .putBoolean(KEY_USED_ITEM + position, true);
+            if (position >= mNumber) editor.putInt(KEY_NUMBER, mNumber = position + 1);
+            editor.apply();
+            onEdited(context);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void remove(@NonNull Context context, @NonNull Saver<V> saver,
+                              int position, @NonNull Map<V, Integer> list) {
+            // Mark this item as unused, so we can restore placeholders too.
+            getSharedPreferences(context).edit()
+                    .putBoolean(KEY_USED_ITEM + position, false)
+                    .apply();
+            onEdited(context);
+        }
+
+        /**
+         * Removes all items from the preferences.
+         */
+        void clear(@NonNull Context context) {
+            getSharedPreferences(context).edit().clear().apply();
+            mNumber = 0;
+        }
+
+        private void onEdited(@NonNull Context context) {
+            // The number of bytes is estimated on request.
+            onWritten(0);
+            if (Build.DEBUG && mContext == null) mContext = context.getApplicationContext();
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p/>
+         * Every edit rewrites the whole file, so this is estimated lazily as the number
+         * of edits multiplied by the current size of the file. Serializing the preferences
+         * is heavy, so this is done in debug builds only; returns {@code 0} otherwise.
+         */
+        @Override
+        public long getBytesWritten() {
+            return mContext != null ? getEditsCount() * estimateFileSize(mContext) : 0;
+        }
+
+        /**
+         * @return the size of the preferences file. The file itself is written
+         * asynchronously by {@link SharedPreferences.Editor#apply()}, so
+         * serialize the in-memory preferences the same way instead.
+         */
+        private long estimateFileSize(@NonNull Context context) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                XmlUtils.writeMapXml(getSharedPreferences(context).getAll(), out);
+            } catch (XmlPullParserException | IOException e) {
+                Log.w(TAG, "Failed to estimate the size of the " + mFileName);
+            }
+            return out.size();
+        }
+
+    }
+
     /**
      * Note, that you must unregister your listener lately.
      *
@@ -172,14 +374,15 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements
         mListeners = new ArrayList<>(6);
 
         createRecyclableFields();
+        mStorage = onCreateStorage();
 
         // Restore previously saved list.
-        SharedPreferences prefs = getSharedPreferences(context);
-        final int n = prefs.getInt(KEY_NUMBER, 0);
+        final long start = System.nanoTime();
+        SparseArray<V> items = new SparseArray<>();
+        final int n = mStorage.load(context, mSaver, items);
         for (int i = 0; i < n; i++) {
-            if (prefs.getBoolean(KEY_USED_ITEM + i, false)) {
-                // Create previously saved object.
-                V object = mSaver.get(prefs, i);
+            V object = items.get(i);
+            if (object != null) {
                 mList.put(object, i);
             } else {
                 // This is an empty place which we can re-use
@@ -187,19 +390,34 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements
                 mPlaceholder.add(i);
             }
         }
+        mStorage.mLoadTime = (System.nanoTime() - start) / 1000;
     }
 
+    /**
+     * @return the name of the shared list's file.
+     * @see #onCreateStorage()
+     */
     @NonNull
-    private SharedPreferences getSharedPreferences(@NonNull Context context) {
-        return context.getSharedPreferences(getPreferencesFileName(), Context.MODE_PRIVATE);
+    protected abstract String getPreferencesFileName();
+
+    /**
+     * @return the backend which will store the items. By default, the items
+     * are stored in the {@link SharedList.PreferencesStorage shared preferences}.
+     * @see SharedListLog
+     */
+    @NonNull
+    protected Storage<V> onCreateStorage() {
+        return new PreferencesStorage<>(getPreferencesFileName());
     }
 
     /**
-     * @return the name of the shared list's file.
-     * @see #getSharedPreferences(android.content.Context)
+     * @return the backend of this list.
+     * @see #onCreateStorage()
      */
     @NonNull
-    protected abstract String getPreferencesFileName();
+    public Storage<V> getStorage() {
+        return mStorage;
+    }
 
     /**
      * @return Instance of saver which will save your Object to shared preferences.
@@ -274,10 +492,8 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements
                 break;
         mPlaceholder.add(i, pos);
 
-        // Mark this item as unused, so we can restore placeholders too.
-        getSharedPreferences(context).edit()
-                .putBoolean(KEY_USED_ITEM + pos, false)
-                .apply();
+        createRecyclableFields();
+        mStorage.remove(context, mSaver, pos, mList);
 
         notifyOnRemoved(objectRemoved, l);
     }
@@ -327,11 +543,7 @@ public abstract class SharedList<V, T extends SharedList.Saver<V>> implements
         createRecyclableFields();
 
         // Save object to internal memory.
-        SharedPreferences.Editor editor = mSaver
-                .put(object, getSharedPreferences(context).edit(), pos)
-                .putBoolean(KEY_USED_ITEM + pos, true);
-        if (growUp) editor.putInt(KEY_NUMBER, mList.size());
-        editor.apply();
+        mStorage.put(context, mSaver, object, pos, mList);
 
         notifyOnPut(object, old, l);
         return old;
@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.content;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.achep.base.utils.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The storage of {@link SharedList} which keeps the items in a compact append-only
+ * binary log: each edit appends a small record instead of rewriting the whole file.
+ * When the log gets much longer than the list, it's compacted to a snapshot of the
+ * current items.
+ * <p/>
+ * On first run the items are migrated from the {@link SharedList.PreferencesStorage}
+ * of the same name. If the migration fails, the items stay in the preferences and
+ * all edits go there until the next run.
+ * <p/>
+ * The items are written to the log by the {@link SharedListLog.Serializer serializer}.
+ *
+ * @author Artem Chepurnoy
+ */
+public class SharedListLog<V> extends SharedList.Storage<V> {
+
+    private static final String TAG = "SharedListLog";
+
+    private static final String FILE_EXTENSION = ".log";
+
+    private static final int MAGIC = 0x53484c47; // SHLG
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    /**
+     * The minimum number of records before compacting the log.
+     */
+    private static final int COMPACTION_MIN_RECORDS = 64;
+
+    /**
+     * Writes are done in order on a single background thread
+     * (the same as {@link android.content.SharedPreferences.Editor#apply()} does.)
+     */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    @NonNull
+    private final String mFileName;
+    @NonNull
+    private final Serializer<V> mSerializer;
+    private File mFile;
+
+    /**
+     * The storage to use instead of the log, if the
+     * migration has failed.
+     */
+    @Nullable
+    private SharedList.PreferencesStorage<V> mFallback;
+
+    /**
+     * The number of records in the log.
+     */
+    private int mRecordsCount;
+    private int mCompactionsCount;
+
+    /**
+     * Writes and reads the items of the {@link SharedListLog log}.
+     *
+     * @author Artem Chepurnoy
+     */
+    public interface Serializer<V> {
+
+        /**
+         * Should write object's data to given binary output.
+         *
+         * @see #read(java.io.DataInput)
+         */
+        void write(@NonNull V object, @NonNull DataOutput out) throws IOException;
+
+        /**
+         * Restores previously written object from binary input.
+         *
+         * @see #write(Object, java.io.DataOutput)
+         */
+        @NonNull
+        V read(@NonNull DataInput in) throws IOException;
+
+    }
+
+    public SharedListLog(@NonNull String fileName, @NonNull Serializer<V> serializer) {
+        mFileName = fileName;
+        mSerializer = serializer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int load(@NonNull Context context, @NonNull SharedList.Saver<V> saver,
+                       @NonNull SparseArray<V> out) {
+        mFile = new File(context.getFilesDir(), mFileName + FILE_EXTENSION);
+        awaitPendingWrites();
+        if (!mFile.exists()) {
+            return migrate(context, saver, out);
+        }
+
+        long offset = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.e(TAG, "Unknown format of the " + mFile.getName() + "! Dropping it.");
+            } else while (true) {
+                offset = Math.max(offset, HEADER_SIZE);
+                final byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    break; // the end of the log
+                }
+
+                final int position = in.readInt();
+                switch (op) {
+                    case OP_PUT:
+                        final int length = in.readInt();
+                        if (length < 0 || length > mFile.length() - offset - 9) {
+                            throw new IOException("Invalid length of the record: " + length);
+                        }
+
+                        byte[] payload = new byte[length];
+                        in.readFully(payload);
+                        V object = readPayload(payload);
+                        if (object != null) {
+                            out.put(position, object);
+                        } else {
+                            // The record is framed well, so skip only
+                            // its item.
+                            Log.w(TAG, "Skipped a corrupted item of the " + mFile.getName());
+                            out.remove(position);
+                        }
+                        offset += 9 + length;
+                        break;
+                    case OP_REMOVE:
+                        out.remove(position);
+                        offset += 5;
+                        break;
+                    default:
+                        throw new IOException("Unknown operation of the log: " + op);
+                }
+                mRecordsCount++;
+            }
+        } catch (IOException e) {
+            // Most likely the last record was not written completely,
+            // so just drop it.
+            Log.w(TAG, "Failed to read the " + mFile.getName() + " after "
+                    + mRecordsCount + " records: dropping the tail.");
+        } finally {
+            FileUtils.closeQuietly(in);
+        }
+
+        if (offset == 0) {
+            out.clear();
+            mRecordsCount = 0;
+        }
+        if (offset != mFile.length()) truncate(offset);
+
+        return out.size() == 0 ? 0 : out.keyAt(out.size() - 1) + 1;
+    }
+
+    /**
+     * @return the item of the record, or {@code null} if the payload
+     * doesn't match its length.
+     */
+    @Nullable
+    private V readPayload(@NonNull byte[] payload) {
+        ByteArrayInputStream bais = new ByteArrayInputStream(payload);
+        try {
+            V object = mSerializer.read(new DataInputStream(bais));
+            return bais.available() == 0 ? object : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Moves the items from the {@link SharedList.PreferencesStorage preferences}
+     * to the log.
+     */
+    private int migrate(@NonNull Context context, @NonNull SharedList.Saver<V> saver,
+                        @NonNull SparseArray<V> out) {
+        SharedList.PreferencesStorage<V> prefs = new SharedList.PreferencesStorage<>(mFileName);
+        final int n = prefs.load(context, saver, out);
+
+        // Write the snapshot right now, so the log exists
+        // before clearing the preferences.
+        byte[] snapshot = createSnapshot(out);
+        if (writeSnapshot(snapshot)) {
+            mRecordsCount = out.size();
+            prefs.clear(context);
+
+            if (DEBUG) Log.d(TAG, "Migrated " + out.size() + " items of " + mFileName
+                    + " from the shared preferences.");
+        } else {
+            // Appending to the missing log would lose the items
+            // of the preferences, so keep using them.
+            mFallback = prefs;
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void put(@NonNull Context context, @NonNull SharedList.Saver<V> saver,
+                       @NonNull V object, int position,
+                       @NonNull Map<V, Integer> list) {
+        if (mFallback != null) {
+            mFallback.put(context, saver, object, position, list);
+            return;
+        }
+
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            mSerializer.write(object, new DataOutputStream(payload));
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(9 + payload.size());
+            DataOutputStream dos = new DataOutputStream(record);
+            dos.writeByte(OP_PUT);
+            dos.writeInt(position);
+            dos.writeInt(payload.size());
+            payload.writeTo(dos);
+            append(record.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException(e); // should never happen
+        }
+
+        compactIfNeeded(list);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void remove(@NonNull Context context, @NonNull SharedList.Saver<V> saver,
+                          int position, @NonNull Map<V, Integer> list) {
+        if (mFallback != null) {
+            mFallback.remove(context, saver, position, list);
+            return;
+        }
+
+        byte[] record = new byte[5];
+        record[0] = OP_REMOVE;
+        record[1] = (byte) (position >>> 24);
+        record[2] = (byte) (position >>> 16);
+        record[3] = (byte) (position >>> 8);
+        record[4] = (byte) position;
+        append(record);
+
+        compactIfNeeded(list);
+    }
+
+    /**
+     * Blocks until all previously scheduled writes are done.
+     */
+    private static void awaitPendingWrites() {
+        try {
+            sExecutor.submit(new Runnable() {
+                @Override
+                public void run() { /* empty */ }
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.w(TAG, "Interrupted while waiting for pending writes.");
+        }
+    }
+
+    private void append(@NonNull final byte[] record) {
+        mRecordsCount++;
+        onWritten(record.length);
+
+        final File file = mFile;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                FileOutputStream fos = null;
+                try {
+                    fos = new FileOutputStream(file, true);
+                    fos.write(record);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to append a record to the " + file.getName());
+                } finally {
+                    FileUtils.closeQuietly(fos);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rewrites the log with a snapshot of current items, if it has
+     * too many dead records.
+     */
+    private void compactIfNeeded(@NonNull Map<V, Integer> list) {
+        if (mRecordsCount < COMPACTION_MIN_RECORDS || mRecordsCount < list.size() * 2) {
+            return;
+        }
+
+        SparseArray<V> items = new SparseArray<>(list.size());
+        for (Map.Entry<V, Integer> entry : list.entrySet()) {
+            items.put(entry.getValue(), entry.getKey());
+        }
+
+        final byte[] snapshot = createSnapshot(items);
+        mRecordsCount = items.size();
+        mCompactionsCount++;
+        onWritten(snapshot.length);
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(snapshot);
+            }
+        });
+
+        if (DEBUG) Log.d(TAG, "Compacting the " + mFile.getName() + ": "
+                + items.size() + " items, " + snapshot.length + " bytes.");
+    }
+
+    @NonNull
+    private byte[] createSnapshot(@NonNull SparseArray<V> items) {
+        try {
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(snapshot);
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream pos = new DataOutputStream(payload);
+            final int size = items.size();
+            for (int i = 0; i < size; i++) {
+                payload.reset();
+                mSerializer.write(items.valueAt(i), pos);
+
+                dos.writeByte(OP_PUT);
+                dos.writeInt(items.keyAt(i));
+                dos.writeInt(payload.size());
+                payload.writeTo(dos);
+            }
+            return snapshot.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // should never happen
+        }
+    }
+
+    /**
+     * Atomically replaces the log with given snapshot.
+     *
+     * @return {@code true} if the snapshot is written, {@code false} otherwise.
+     */
+    private boolean writeSnapshot(@NonNull byte[] snapshot) {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(tmp);
+            fos.write(snapshot);
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write a snapshot of the " + mFile.getName());
+            return false;
+        } finally {
+            FileUtils.closeQuietly(fos);
+        }
+        return tmp.renameTo(mFile);
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(mFile, "rw");
+            if (length == 0) {
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+            } else raf.setLength(length);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to truncate the " + mFile.getName());
+        } finally {
+            FileUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return the number of records in the log.
+     */
+    public int getRecordsCount() {
+        return mRecordsCount;
+    }
+
+    /**
+     * @return how many times the log was compacted.
+     */
+    public int getCompactionsCount() {
+        return mCompactionsCount;
+    }
+
+}
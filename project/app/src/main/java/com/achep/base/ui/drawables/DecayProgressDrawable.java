@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.ui.drawables;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+
+/**
+ * The flat progress bar: the track and the progress over it, drawn with two rectangles.
+ * Changing the progress only invalidates the drawable, so setting it as the background
+ * of a plain view never causes a layout pass.
+ *
+ * @author Artem Chepurnoy
+ */
+public class DecayProgressDrawable extends Drawable {
+
+    private final Paint mTrackPaint = new Paint();
+    private final Paint mProgressPaint = new Paint();
+    private final int mTrackAlpha;
+    private final int mProgressAlpha;
+
+    private float mProgress;
+    private boolean mShown;
+
+    public DecayProgressDrawable(int trackColor, int progressColor) {
+        mTrackPaint.setColor(trackColor);
+        mProgressPaint.setColor(progressColor);
+        mTrackAlpha = mTrackPaint.getAlpha();
+        mProgressAlpha = mProgressPaint.getAlpha();
+    }
+
+    /**
+     * Sets the progress, from {@code 0} to {@code 1}.
+     */
+    public void setProgress(float progress) {
+        progress = Math.max(0f, Math.min(1f, progress));
+        if (mProgress != progress) {
+            mProgress = progress;
+            if (mShown) invalidateSelf();
+        }
+    }
+
+    public float getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * Shows or hides the progress bar; a hidden one draws nothing.
+     */
+    public void setShown(boolean shown) {
+        if (mShown != shown) {
+            mShown = shown;
+            invalidateSelf();
+        }
+    }
+
+    public boolean isShown() {
+        return mShown;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (!mShown) return;
+
+        final Rect bounds = getBounds();
+        canvas.drawRect(bounds, mTrackPaint);
+        final float right = bounds.left + bounds.width() * mProgress;
+        canvas.drawRect(bounds.left, bounds.top, right, bounds.bottom, mProgressPaint);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAlpha(int alpha) {
+        mTrackPaint.setAlpha(mTrackAlpha * alpha / 255);
+        mProgressPaint.setAlpha(mProgressAlpha * alpha / 255);
+        invalidateSelf();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mTrackPaint.setColorFilter(cf);
+        mProgressPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+}
@@ -20,6 +20,8 @@ package com.achep.base.utils;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 
 /**
  * Created by Artem on 16.03.14.
@@ -45,4 +47,54 @@ public class CsUtils {
         return sb.length() == 0 ? null : sb;
     }
 
+    /**
+     * Trims the whitespaces and collapses runs of line breaks into single
+     * ones, keeping the spans. This doesn't allocate anything if there's
+     * nothing to change.
+     *
+     * @return the normalized text, or given text itself if it's already normal.
+     */
+    @NonNull
+    public static CharSequence normalize(@NonNull CharSequence cs) {
+        int start = 0;
+        int end = cs.length();
+        while (start < end && isWhitespace(cs.charAt(start))) start++;
+        while (end > start && isWhitespace(cs.charAt(end - 1))) end--;
+
+        boolean collapse = false;
+        for (int i = start + 1; i < end; i++) {
+            if (cs.charAt(i) == '\n' && cs.charAt(i - 1) == '\n') {
+                collapse = true;
+                break;
+            }
+        }
+
+        if (!collapse) {
+            return start == 0 && end == cs.length() ? cs : cs.subSequence(start, end);
+        }
+
+        if (cs instanceof Spanned) {
+            SpannableStringBuilder sb = new SpannableStringBuilder(cs, start, end);
+            for (int i = sb.length() - 1; i > 0; i--) {
+                if (sb.charAt(i) == '\n' && sb.charAt(i - 1) == '\n') sb.delete(i, i + 1);
+            }
+            return sb;
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            final char c = cs.charAt(i);
+            if (c != '\n' || cs.charAt(i - 1) != '\n') sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return {@code true} if the char is one of the {@code \s} of
+     * regular expressions, {@code false} otherwise.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
 }
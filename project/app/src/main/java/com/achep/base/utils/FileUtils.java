@@ -23,6 +23,7 @@ import android.support.annotation.Nullable;
 import android.util.Log;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
@@ -67,6 +68,18 @@ public class FileUtils {
         return false;
     }
 
+    /**
+     * Closes given stream, ignoring all exceptions.
+     */
+    public static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            if (DEBUG) Log.w(TAG, "Failed to close the stream=" + closeable);
+        }
+    }
+
     /**
      * Writes given text to file (deletes original file).
      *
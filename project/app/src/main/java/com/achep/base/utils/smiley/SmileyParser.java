@@ -19,6 +19,7 @@
 package com.achep.base.utils.smiley;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.Spannable;
@@ -27,13 +28,17 @@ import android.text.style.ImageSpan;
 
 import com.achep.headsup.R;
 
-import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A class for annotating a CharSequence with spans to convert textual emoticons
  * to graphical ones.
+ * <p/>
+ * Emoticons are found by the Aho–Corasick automaton in a single pass over
+ * the text. The result is the same as of the {@code (:-\)|:-\(|...)} regular
+ * expression: the leftmost emoticon wins, and of emoticons starting at the same
+ * position the first one in {@link #DEFAULT_SMILEY_TEXTS} wins.
  */
 public class SmileyParser {
     // Singleton stuff
@@ -49,14 +54,48 @@ public class SmileyParser {
 
     private final Context mContext;
     private final String[] mSmileyTexts;
-    private final Pattern mPattern;
-    private final HashMap<String, Integer> mSmileyToRes;
+
+    /**
+     * The drawables of smileys, shared between all spans.
+     *
+     * @see #getDrawable(int)
+     */
+    private final Drawable[] mDrawables;
+
+    // Automaton
+    /**
+     * The class of each character from {@code 0} to {@link #ALPHABET_MAX_CHAR},
+     * or {@code -1} if the character is not a part of any smiley.
+     */
+    private final byte[] mCharClasses = new byte[ALPHABET_MAX_CHAR + 1];
+    private int mClassesCount;
+    /**
+     * The transitions of the automaton: {@code mTransitions[state * mClassesCount + class]}.
+     */
+    private int[] mTransitions;
+    /**
+     * The depth of each state (the length of its prefix).
+     */
+    private int[] mDepths;
+    /**
+     * The index of the first smiley (in the order of {@link #mSmileyTexts}) that
+     * ends at each state and starts at the farthest position, or {@code -1}.
+     */
+    private int[] mOutputs;
+
+    private static final int ALPHABET_MAX_CHAR = 127;
 
     private SmileyParser(@NonNull Context context) {
         mContext = context;
         mSmileyTexts = mContext.getResources().getStringArray(DEFAULT_SMILEY_TEXTS);
-        mSmileyToRes = buildSmileyToRes();
-        mPattern = buildPattern();
+        if (DEFAULT_SMILEY_RES_IDS.length != mSmileyTexts.length) {
+            // Throw an exception if someone updated DEFAULT_SMILEY_RES_IDS
+            // and failed to update arrays.xml
+            throw new IllegalStateException("Smiley resource ID/text mismatch");
+        }
+
+        mDrawables = new Drawable[mSmileyTexts.length];
+        buildAutomaton();
     }
 
     static class Smileys {
@@ -142,46 +181,113 @@ public class SmileyParser {
 //    public static final int DEFAULT_SMILEY_NAMES = R.array.default_smiley_names;
 
     /**
-     * Builds the hashtable we use for mapping the string version
-     * of a smiley (e.g. ":-)") to a resource ID for the icon version.
+     * Builds the automaton we use to find smileys in {@link #addSmileySpans(CharSequence)}.
      */
-    @NonNull
-    private HashMap<String, Integer> buildSmileyToRes() {
-        if (DEFAULT_SMILEY_RES_IDS.length != mSmileyTexts.length) {
-            // Throw an exception if someone updated DEFAULT_SMILEY_RES_IDS
-            // and failed to update arrays.xml
-            throw new IllegalStateException("Smiley resource ID/text mismatch");
+    private void buildAutomaton() {
+        // Map characters of smileys to compact classes, so the
+        // table of transitions stays tiny.
+        Arrays.fill(mCharClasses, (byte) -1);
+        for (String smiley : mSmileyTexts) {
+            for (int i = 0; i < smiley.length(); i++) {
+                char c = smiley.charAt(i);
+                if (c > ALPHABET_MAX_CHAR) {
+                    throw new IllegalStateException("Smileys must consist of ASCII characters only!");
+                }
+                if (mCharClasses[c] == -1) mCharClasses[c] = (byte) mClassesCount++;
+            }
         }
 
-        HashMap<String, Integer> smileyToRes = new HashMap<>(mSmileyTexts.length);
-        for (int i = 0; i < mSmileyTexts.length; i++) {
-            smileyToRes.put(mSmileyTexts[i], DEFAULT_SMILEY_RES_IDS[i]);
+        // Build the trie.
+        final int k = mClassesCount;
+        ArrayList<int[]> trie = new ArrayList<>();
+        ArrayList<Integer> depths = new ArrayList<>();
+        ArrayList<Integer> outputs = new ArrayList<>();
+        trie.add(newNode(k));
+        depths.add(0);
+        outputs.add(-1);
+        for (int index = 0; index < mSmileyTexts.length; index++) {
+            String smiley = mSmileyTexts[index];
+            int state = 0;
+            for (int i = 0; i < smiley.length(); i++) {
+                int c = mCharClasses[smiley.charAt(i)];
+                int next = trie.get(state)[c];
+                if (next == -1) {
+                    next = trie.size();
+                    trie.get(state)[c] = next;
+                    trie.add(newNode(k));
+                    depths.add(i + 1);
+                    outputs.add(-1);
+                }
+                state = next;
+            }
+            if (outputs.get(state) == -1) outputs.set(state, index);
         }
 
-        return smileyToRes;
+        // Build the failure links in breadth-first order and turn the
+        // trie into the full table of transitions.
+        final int n = trie.size();
+        mTransitions = new int[n * k];
+        mDepths = new int[n];
+        mOutputs = new int[n];
+        int[] fail = new int[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int c = 0; c < k; c++) {
+            int next = trie.get(0)[c];
+            if (next == -1) {
+                mTransitions[c] = 0;
+            } else {
+                mTransitions[c] = next;
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            mDepths[i] = depths.get(i);
+            mOutputs[i] = outputs.get(i);
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            // The own smiley of this state starts farther than any smiley
+            // reachable by the failure link, so it's preferred.
+            if (mOutputs[state] == -1) mOutputs[state] = mOutputs[fail[state]];
+            for (int c = 0; c < k; c++) {
+                int next = trie.get(state)[c];
+                if (next == -1) {
+                    mTransitions[state * k + c] = mTransitions[fail[state] * k + c];
+                } else {
+                    mTransitions[state * k + c] = next;
+                    fail[next] = mTransitions[fail[state] * k + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    @NonNull
+    private static int[] newNode(int size) {
+        int[] node = new int[size];
+        Arrays.fill(node, -1);
+        return node;
     }
 
     /**
-     * Builds the regular expression we use to find smileys in { @link #addSmileySpans }.
+     * @return the shared drawable of the smiley.
      */
     @NonNull
-    private Pattern buildPattern() {
-        // Set the StringBuilder capacity with the assumption that the average
-        // smiley is 3 characters long.
-        StringBuilder patternString = new StringBuilder(mSmileyTexts.length * 3);
-
-        // Build a regex that looks like (:-)|:-(|...), but escaping the smilies
-        // properly so they will be interpreted literally by the regex matcher.
-        patternString.append('(');
-        for (String s : mSmileyTexts) {
-            patternString.append(Pattern.quote(s));
-            patternString.append('|');
+    private Drawable getDrawable(int index) {
+        synchronized (mDrawables) {
+            Drawable drawable = mDrawables[index];
+            if (drawable == null) {
+                drawable = mContext.getResources().getDrawable(DEFAULT_SMILEY_RES_IDS[index]);
+                assert drawable != null;
+                drawable.setBounds(0, 0,
+                        drawable.getIntrinsicWidth(),
+                        drawable.getIntrinsicHeight());
+                mDrawables[index] = drawable;
+            }
+            return drawable;
         }
-
-        // Replace the extra '|' with a ')'
-        patternString.replace(patternString.length() - 1, patternString.length(), ")");
-
-        return Pattern.compile(patternString.toString());
     }
 
     /**
@@ -190,20 +296,60 @@ public class SmileyParser {
      *
      * @param text A CharSequence possibly containing emoticons
      * @return A CharSequence annotated with ImageSpans covering any
-     * recognized emoticons.
+     * recognized emoticons, or the same CharSequence if there are none.
      */
     public CharSequence addSmileySpans(@Nullable CharSequence text) {
         if (text == null) return null;
 
-        SpannableStringBuilder builder = new SpannableStringBuilder(text);
+        SpannableStringBuilder builder = null;
+        final int k = mClassesCount;
+        final int length = text.length();
+
+        // The leftmost found smiley, which is not
+        // committed yet.
+        int pendingStart = -1;
+        int pendingEnd = 0;
+        int pendingIndex = -1;
+
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int cc = c <= ALPHABET_MAX_CHAR ? mCharClasses[c] : -1;
+            state = cc == -1 ? 0 : mTransitions[state * k + cc];
+
+            final int index = mOutputs[state];
+            if (index != -1) {
+                final int start = i + 1 - mSmileyTexts[index].length();
+                if (pendingIndex == -1 || start < pendingStart
+                        || start == pendingStart && index < pendingIndex) {
+                    pendingStart = start;
+                    pendingEnd = i + 1;
+                    pendingIndex = index;
+                }
+            }
+
+            // Commit the pending smiley when no other smiley starting
+            // before it or at the same position may be found.
+            if (pendingIndex != -1 && i + 1 - mDepths[state] > pendingStart) {
+                if (builder == null) builder = new SpannableStringBuilder(text);
+                builder.setSpan(new ImageSpan(getDrawable(pendingIndex)),
+                        pendingStart, pendingEnd,
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+                // Continue right after the smiley.
+                i = pendingEnd - 1;
+                state = 0;
+                pendingIndex = -1;
+            }
+        }
 
-        Matcher matcher = mPattern.matcher(text);
-        while (matcher.find()) {
-            int resId = mSmileyToRes.get(matcher.group());
-            builder.setSpan(new ImageSpan(mContext, resId), matcher.start(), matcher.end(),
+        if (pendingIndex != -1) {
+            if (builder == null) builder = new SpannableStringBuilder(text);
+            builder.setSpan(new ImageSpan(getDrawable(pendingIndex)),
+                    pendingStart, pendingEnd,
                     Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
         }
 
-        return builder;
+        return builder != null ? builder : text;
     }
 }
\ No newline at end of file
@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.headsup;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+
+import com.achep.base.utils.power.PowerSaveDetector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * Runs the enter, exit and removal animations of heads-up. All animations
+ * are {@link ObjectAnimator object animators} of translation and alpha, run on
+ * hardware layers; the removal shifts the siblings by translation and removes
+ * the view only when it's over, so the container is laid out only once.
+ * <p/>
+ * While animations run, the frame-budget monitor counts dropped frames; if
+ * an animation drops too many of them, it's ended immediately and all
+ * animations are skipped for a while.
+ *
+ * @author Artem Chepurnoy
+ */
+final class HeadsUpAnimator {
+
+    private static final String TAG = "HeadsUpAnimator";
+
+    /**
+     * How long the removal of a heads-up is.
+     */
+    private static final int REMOVAL_DURATION = 300;
+
+    /**
+     * How many frames an animation may drop before
+     * animations are turned off for a while.
+     */
+    private static final int MAX_DROPPED_FRAMES = 3;
+
+    /**
+     * How long animations stay turned off after
+     * the frame budget was exceeded.
+     */
+    private static final int DROP_ANIMATIONS_DURATION = 10 * 1000; // 10 sec.
+
+    private final ArrayList<Animator> mAnimators = new ArrayList<>(4);
+    private final HashMap<View, Appearance> mAppearances = new HashMap<>(4);
+    private final FrameMonitor mFrameMonitor;
+    private final int mDuration;
+
+    @Nullable
+    private PowerSaveDetector mPowerSaveDetector;
+    @Nullable
+    private Animator mHideAnimator;
+
+    /**
+     * The time until which animations are dropped, in
+     * {@link SystemClock#uptimeMillis()} time base.
+     */
+    private long mDropUntil;
+    private int mDroppedAnimationCount;
+
+    /**
+     * Counts the frames dropped while animations run.
+     *
+     * @author Artem Chepurnoy
+     */
+    private final class FrameMonitor implements Choreographer.FrameCallback {
+
+        private final long mFrameIntervalNanos;
+
+        private boolean mRunning;
+        private long mLastFrameTimeNanos;
+        private int mSessionDroppedFrames;
+
+        // Jank stats
+        private int mFrameCount;
+        private int mJankyFrameCount;
+        private int mDroppedFrameCount;
+
+        FrameMonitor(float refreshRate) {
+            mFrameIntervalNanos = (long) (1000000000 / refreshRate);
+        }
+
+        void start() {
+            if (mRunning) return;
+            mRunning = true;
+            mLastFrameTimeNanos = 0;
+            mSessionDroppedFrames = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            if (!mRunning) return;
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) return;
+            // The first frame of an animation is usually long
+            // because of the layout, so skip it.
+            if (mLastFrameTimeNanos != 0) {
+                final long delta = frameTimeNanos - mLastFrameTimeNanos;
+                final int dropped = (int) ((delta + mFrameIntervalNanos / 2) / mFrameIntervalNanos) - 1;
+                mFrameCount++;
+                if (dropped > 0) {
+                    mJankyFrameCount++;
+                    mDroppedFrameCount += dropped;
+                    mSessionDroppedFrames += dropped;
+                    if (mSessionDroppedFrames > MAX_DROPPED_FRAMES) {
+                        onFrameBudgetExceeded(mSessionDroppedFrames);
+                        return;
+                    }
+                }
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+    }
+
+    /**
+     * Tracks the animator: sets up hardware layers of the animated views,
+     * and runs the end action, unless the animation was canceled.
+     *
+     * @author Artem Chepurnoy
+     */
+    private class Tracker extends AnimatorListenerAdapter {
+
+        @NonNull
+        private final View[] mViews;
+        @Nullable
+        private final Runnable mEndAction;
+        private boolean mCanceled;
+
+        Tracker(@Nullable Runnable endAction, @NonNull View... views) {
+            mEndAction = endAction;
+            mViews = views;
+        }
+
+        @Override
+        public void onAnimationStart(@NonNull Animator animation) {
+            for (View view : mViews) {
+                view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+                if (view.getWindowToken() != null) view.buildLayer();
+            }
+        }
+
+        @Override
+        public void onAnimationCancel(@NonNull Animator animation) {
+            mCanceled = true;
+        }
+
+        @Override
+        public void onAnimationEnd(@NonNull Animator animation) {
+            for (View view : mViews) view.setLayerType(View.LAYER_TYPE_NONE, null);
+            mAnimators.remove(animation);
+            if (mHideAnimator == animation) mHideAnimator = null;
+            if (mAnimators.isEmpty()) mFrameMonitor.stop();
+
+            if (!mCanceled && mEndAction != null) mEndAction.run();
+        }
+
+    }
+
+    /**
+     * Waits for the first frame of the view to fade it in.
+     *
+     * @author Artem Chepurnoy
+     * @see #animateAppearance(View)
+     */
+    private final class Appearance implements ViewTreeObserver.OnPreDrawListener {
+
+        @NonNull
+        private final View mView;
+
+        /**
+         * The observer of the window: the view's own observer changes
+         * once the view is detached.
+         */
+        @NonNull
+        final ViewTreeObserver observer;
+
+        Appearance(@NonNull View view) {
+            mView = view;
+            observer = view.getViewTreeObserver();
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            remove();
+
+            ObjectAnimator animator = ObjectAnimator.ofFloat(mView, View.ALPHA, 0f, 1f);
+            animator.setInterpolator(new DecelerateInterpolator());
+            animator.setDuration(mDuration);
+            start(animator, new Tracker(null, mView));
+            return true;
+        }
+
+        void remove() {
+            mAppearances.remove(mView);
+            if (observer.isAlive()) observer.removeOnPreDrawListener(this);
+            ViewTreeObserver current = mView.getViewTreeObserver();
+            if (current != observer && current.isAlive()) current.removeOnPreDrawListener(this);
+        }
+
+    }
+
+    HeadsUpAnimator(@NonNull Context context) {
+        WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mFrameMonitor = new FrameMonitor(wm.getDefaultDisplay().getRefreshRate());
+        mDuration = context.getResources().getInteger(android.R.integer.config_shortAnimTime);
+    }
+
+    void setPowerSaveDetector(@Nullable PowerSaveDetector psd) {
+        mPowerSaveDetector = psd;
+    }
+
+    /**
+     * @return {@code true} if animations may be run now, {@code false} if they're
+     * turned off by the power-save mode or after the frame budget was exceeded.
+     */
+    private boolean canAnimate() {
+        if (mPowerSaveDetector != null && mPowerSaveDetector.isPowerSaveMode()) {
+            return false;
+        } else if (mDropUntil > SystemClock.uptimeMillis()) {
+            mDroppedAnimationCount++;
+            return false;
+        }
+        return true;
+    }
+
+    private void start(@NonNull Animator animator, @NonNull Tracker tracker) {
+        animator.addListener(tracker);
+        mAnimators.add(animator);
+        mFrameMonitor.start();
+        animator.start();
+    }
+
+    /**
+     * Slides the container in from the edge of the screen
+     * on its first frame.
+     *
+     * @param atTop {@code true} if heads-up is shown at the top of the screen.
+     */
+    void animateShow(@NonNull final View container, final boolean atTop) {
+        if (!canAnimate()) return;
+        container.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                container.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                final float from = atTop ? -container.getHeight() : container.getHeight();
+                ObjectAnimator animator = ObjectAnimator.ofPropertyValuesHolder(container,
+                        PropertyValuesHolder.ofFloat(View.TRANSLATION_Y, from, 0f),
+                        PropertyValuesHolder.ofFloat(View.ALPHA, 0f, 1f));
+                animator.setInterpolator(new DecelerateInterpolator());
+                animator.setDuration(mDuration);
+                start(animator, new Tracker(null, container));
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Fades the new view in on its first frame.
+     *
+     * @see #cancelAppearance(View)
+     */
+    void animateAppearance(@NonNull final View view) {
+        if (!canAnimate()) return;
+        cancelAppearance(view);
+        view.setAlpha(0f);
+
+        Appearance appearance = new Appearance(view);
+        mAppearances.put(view, appearance);
+        appearance.observer.addOnPreDrawListener(appearance);
+    }
+
+    /**
+     * Cancels the appearance of the view, if it has not started yet. This
+     * must be called before the view is reused.
+     *
+     * @see #animateAppearance(View)
+     */
+    void cancelAppearance(@NonNull View view) {
+        Appearance appearance = mAppearances.get(view);
+        if (appearance != null) appearance.remove();
+    }
+
+    /**
+     * Fades the container out, and then runs the end action. The end action
+     * is not run if the hiding is {@link #cancelHide(View) canceled}.
+     */
+    void animateHide(@NonNull View container, @NonNull Runnable endAction) {
+        if (!canAnimate()) {
+            endAction.run();
+            return;
+        }
+
+        cancelHide(container);
+        ObjectAnimator animator = ObjectAnimator.ofPropertyValuesHolder(container,
+                PropertyValuesHolder.ofFloat(View.SCALE_X, 0.8f),
+                PropertyValuesHolder.ofFloat(View.SCALE_Y, 0.8f),
+                PropertyValuesHolder.ofFloat(View.ALPHA, 0f));
+        animator.setInterpolator(new AccelerateInterpolator());
+        animator.setDuration(mDuration);
+        mHideAnimator = animator;
+        start(animator, new Tracker(endAction, container));
+    }
+
+    /**
+     * Cancels the hiding of the container, if it's running,
+     * and resets the container.
+     *
+     * @see #animateHide(View, Runnable)
+     */
+    void cancelHide(@NonNull View container) {
+        if (mHideAnimator != null) mHideAnimator.cancel();
+        container.setScaleX(1f);
+        container.setScaleY(1f);
+        container.setAlpha(1f);
+    }
+
+    /**
+     * Fades the view out, while moving the siblings over its space by translation.
+     * The view is removed from the container, and the end action is run, only when
+     * the animation ends, so there's only one layout pass.
+     *
+     * @param atTop {@code true} if heads-up is shown at the top of the screen: the
+     *              siblings below the view move up then; otherwise the window
+     *              shrinks from the top, so the siblings above move down.
+     */
+    void animateRemoval(@NonNull final ViewGroup container, @NonNull final View view,
+                        boolean atTop, @Nullable final Runnable endAction) {
+        final int index = container.indexOfChild(view);
+        if (!canAnimate() || index == -1) {
+            container.removeView(view);
+            if (endAction != null) endAction.run();
+            return;
+        }
+
+        final int from = atTop ? index + 1 : 0;
+        final int to = atTop ? container.getChildCount() : index;
+        final View[] views = new View[to - from + 1];
+        for (int i = from; i < to; i++) views[i - from] = container.getChildAt(i);
+        views[views.length - 1] = view;
+
+        final float alpha = view.getAlpha();
+        final float shift = atTop ? -view.getHeight() : view.getHeight();
+        ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(@NonNull ValueAnimator animation) {
+                final float fraction = animation.getAnimatedFraction();
+                view.setAlpha(alpha * (1f - fraction));
+                for (int i = views.length - 2; i >= 0; i--) {
+                    views[i].setTranslationY(shift * fraction);
+                }
+            }
+        });
+        animator.setInterpolator(new DecelerateInterpolator());
+        animator.setDuration(REMOVAL_DURATION);
+        start(animator, new Tracker(new Runnable() {
+            @Override
+            public void run() {
+                // The siblings take the place of removed view
+                // on the next layout, exactly where they are now.
+                for (int i = views.length - 2; i >= 0; i--) views[i].setTranslationY(0);
+                container.removeView(view);
+                if (endAction != null) endAction.run();
+            }
+        }, views));
+    }
+
+    /**
+     * Ends all running animations, except hiding, immediately. This must be called
+     * before changing the children of the container.
+     */
+    void endAll() {
+        for (int i = mAnimators.size() - 1; i >= 0; i--) {
+            if (i >= mAnimators.size()) continue; // ending may end others
+            Animator animator = mAnimators.get(i);
+            if (animator != mHideAnimator) animator.end();
+        }
+    }
+
+    private void onFrameBudgetExceeded(int droppedFrames) {
+        Log.w(TAG, "Dropped " + droppedFrames + " frames of animation, "
+                + "turning animations off for a while.");
+        mDropUntil = SystemClock.uptimeMillis() + DROP_ANIMATIONS_DURATION;
+        for (int i = mAnimators.size() - 1; i >= 0; i--) {
+            if (i >= mAnimators.size()) continue;
+            mAnimators.get(i).end();
+        }
+        mFrameMonitor.stop();
+    }
+
+    //-- JANK STATS -----------------------------------------------------------
+
+    /**
+     * @return the number of frames drawn while animations were running.
+     */
+    int getFrameCount() {
+        return mFrameMonitor.mFrameCount;
+    }
+
+    /**
+     * @return the number of frames that took longer than one refresh interval.
+     */
+    int getJankyFrameCount() {
+        return mFrameMonitor.mJankyFrameCount;
+    }
+
+    /**
+     * @return the number of refresh intervals missed while animations were running.
+     */
+    int getDroppedFrameCount() {
+        return mFrameMonitor.mDroppedFrameCount;
+    }
+
+    /**
+     * @return the number of animations that were skipped because
+     * the frame budget was exceeded recently.
+     */
+    int getDroppedAnimationCount() {
+        return mDroppedAnimationCount;
+    }
+
+    void logStats() {
+        if (DEBUG) Log.d(TAG, "Animated frames=" + getFrameCount()
+                + " janky=" + getJankyFrameCount()
+                + " dropped=" + getDroppedFrameCount()
+                + " skipped_animations=" + getDroppedAnimationCount());
+    }
+
+}
@@ -25,42 +25,35 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.PixelFormat;
-import android.os.Handler;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.transition.TransitionManager;
 import android.util.Log;
-import android.view.ContextThemeWrapper;
 import android.view.Gravity;
 import android.view.LayoutInflater;
+import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
-import android.view.animation.Animation;
-import android.view.animation.AnimationUtils;
 import android.widget.FrameLayout;
-import android.widget.LinearLayout;
-import android.widget.Space;
 
 import com.achep.acdisplay.App;
 import com.achep.acdisplay.Atomic;
 import com.achep.acdisplay.Config;
 import com.achep.acdisplay.notifications.NotificationPresenter;
-import com.achep.acdisplay.notifications.NotificationUtils;
 import com.achep.acdisplay.notifications.OpenNotification;
 import com.achep.acdisplay.ui.widgets.notification.NotificationWidget;
 import com.achep.acdisplay.utils.PendingIntentUtils;
-import com.achep.base.Device;
 import com.achep.base.content.ConfigBase;
+import com.achep.base.interfaces.IOnLowMemory;
 import com.achep.base.tests.Check;
-import com.achep.base.ui.animations.AnimationListenerAdapter;
 import com.achep.base.utils.power.PowerSaveDetector;
 import com.achep.base.utils.power.PowerUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import static com.achep.base.Build.DEBUG;
 
@@ -69,7 +62,7 @@ import static com.achep.base.Build.DEBUG;
  */
 public class HeadsUpBase implements
         NotificationPresenter.OnNotificationListChangedListener,
-        ConfigBase.OnConfigChangedListener {
+        ConfigBase.OnConfigChangedListener, IOnLowMemory {
 
     private static final String TAG = "HeadsUpBase";
 
@@ -82,11 +75,6 @@ public class HeadsUpBase implements
      */
     private static final int MAX_DISABLE_INTENT_DURATION = 10 * 60 * 1000; // 10 min.
 
-    /**
-     * How long container's layout-animation is?
-     */
-    private static final int LAYOUT_ANIMATION_TIME = 300;
-
     private static HeadsUpBase sInstance;
 
     public static HeadsUpBase getInstance() {
@@ -141,7 +129,23 @@ public class HeadsUpBase implements
     private boolean mShownAtTop;
     private long mDisableIntentTime;
 
-    private final Handler mHandler = new Handler();
+    /**
+     * Runs the enter, exit and removal animations; keeps
+     * the jank stats between restarts.
+     */
+    private HeadsUpAnimator mAnimator;
+
+    private final Runnable mHideEndAction = new Runnable() {
+        @Override
+        public void run() {
+            onHide(true); // this is called inside of the #hide(boolean)
+        }
+    };
+
+    // Time-to-first-frame of new heads-ups.
+    private int mFirstFrameCount;
+    private long mFirstFrameTotalTime;
+    private long mFirstFrameMaxTime;
     private final BroadcastReceiver mReceiver =
             new BroadcastReceiver() {
 
@@ -205,13 +209,12 @@ public class HeadsUpBase implements
         // Views
         HeadsUpView rootView;
         ViewGroup containerView;
-        int containerOffset;
-
-        // Animations
-        Animation exitAnimation;
 
         // Notifications
         ArrayList<HeadsUpNotificationView> widgetList;
+        HashMap<Object, HeadsUpNotificationView> widgetMap;
+        HeadsUpViewPool widgetPool;
+        KeyedDiff widgetDiff;
 
     }
 
@@ -266,6 +269,8 @@ public class HeadsUpBase implements
         mHolder.wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         mHolder.psd = PowerSaveDetector.newInstance(context);
         mHolder.widgetList = new ArrayList<>();
+        mHolder.widgetMap = new HashMap<>();
+        mHolder.widgetDiff = new KeyedDiff();
 
         // Setup views.
         LayoutInflater inflater = (LayoutInflater) context
@@ -275,15 +280,8 @@ public class HeadsUpBase implements
         mHolder.rootView.setHeadsUpManager(this);
         mHolder.containerView = (ViewGroup) mHolder.rootView.findViewById(R.id.content);
 
-        // Load animations.
-        mHolder.exitAnimation = AnimationUtils.loadAnimation(context, R.anim.heads_up_exit);
-        mHolder.exitAnimation.setAnimationListener(new AnimationListenerAdapter() {
-            @Override
-            public void onAnimationEnd(@NonNull Animation animation) {
-                super.onAnimationEnd(animation);
-                onHide(true); // this is called inside of the #hide(boolean)
-            }
-        });
+        if (mAnimator == null) mAnimator = new HeadsUpAnimator(context);
+        mAnimator.setPowerSaveDetector(mHolder.psd);
 
         IntentFilter filter = new IntentFilter();
         filter.addAction(ACTION_ALLOW_HEADSUP);
@@ -299,6 +297,12 @@ public class HeadsUpBase implements
 
         mEnabled = config.isEnabled();
         mShownAtTop = config.isShownAtTop();
+
+        // Pre-inflate the views, so the first
+        // heads-up doesn't pay for it.
+        final int poolSize = context.getResources().getInteger(R.integer.config_headsup_pool_size);
+        mHolder.widgetPool = new HeadsUpViewPool(context, poolSize);
+        mHolder.widgetPool.prewarm(config.getTheme(), mHolder.containerView);
     }
 
     void onStop() {
@@ -309,10 +313,15 @@ public class HeadsUpBase implements
             detachFromWindow();
         }
 
+        mAnimator.cancelHide(mHolder.containerView);
+        mAnimator.endAll();
+        mAnimator.setPowerSaveDetector(null);
+        mAnimator.logStats();
+
         NotificationPresenter.getInstance().unregisterListener(this);
         getConfig().unregisterListener(this);
         mHolder.context.unregisterReceiver(mReceiver);
-        mHandler.removeCallbacksAndMessages(null);
+        mHolder.rootView.recycle();
 
         // Because this class is Singleton, better
         // to release all sensitive resources manually.
@@ -329,15 +338,14 @@ public class HeadsUpBase implements
             detachFromWindow();
 
             // Erase container view.
-            mHandler.removeCallbacksAndMessages(null);
+            mAnimator.endAll();
             mHolder.containerView.removeAllViews();
-            mHolder.containerOffset = 0;
+            for (HeadsUpNotificationView widget : mHolder.widgetList) {
+                recycleWidget(widget);
+            }
             mHolder.widgetList.clear();
-        } else {
-            final View view = mHolder.containerView;
-            final Animation animation = mHolder.exitAnimation;
-            view.startAnimation(animation);
-        }
+            mHolder.widgetMap.clear();
+        } else mAnimator.animateHide(mHolder.containerView, mHideEndAction);
     }
 
 
@@ -345,6 +353,14 @@ public class HeadsUpBase implements
         return mHolder.psd;
     }
 
+    /**
+     * @see HeadsUpView#getVelocityTracker()
+     */
+    @NonNull
+    VelocityTracker getVelocityTracker() {
+        return mHolder.rootView.getVelocityTracker();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -399,69 +415,72 @@ public class HeadsUpBase implements
     private void rebuildNotifications() {
         if (DEBUG) Log.d(TAG, "Rebuilding notifications list.");
         ArrayList<OpenNotification> list = NotificationPresenter.getInstance().getList();
-        if (list.isEmpty()) hide(false);
+        if (list.isEmpty()) {
+            hide(false);
+            return;
+        }
 
+        final ArrayList<HeadsUpNotificationView> widgets = mHolder.widgetList;
         final int notifyCount = list.size();
-        final int widgetCount = mHolder.widgetList.size();
-        final boolean[] notifyUsed = new boolean[notifyCount];
-        final boolean[] widgetUsed = new boolean[widgetCount];
-
+        final int widgetCount = widgets.size();
+        ArrayList<Object> oldKeys = new ArrayList<>(widgetCount);
+        ArrayList<Object> newKeys = new ArrayList<>(notifyCount);
         for (int i = 0; i < widgetCount; i++) {
-            HeadsUpNotificationView widget = mHolder.widgetList.get(i);
-            OpenNotification target = widget.getNotification();
-
-            for (int j = 0; j < notifyCount; j++) {
-                OpenNotification n = list.get(j);
-                if (NotificationUtils.hasIdenticalIds(target, n)) {
-
-                    notifyUsed[j] = true;
-                    widgetUsed[i] = true;
-
-                    if (target != n) {
-                        widget.setNotification(n);
-                        widget.resetDecayTime();
-                    }
-                    break;
-                }
-            }
+            OpenNotification n = widgets.get(i).getNotification();
+            assert n != null;
+            oldKeys.add(n.getIdentityKey());
+        }
+        for (int i = 0; i < notifyCount; i++) {
+            newKeys.add(list.get(i).getIdentityKey());
         }
 
-        // Re-use free views and remove redundant views.
-        boolean removeAllAfter = false;
-        for (int a = 0, j = 0, offset = 0; a < widgetCount; a++) {
-            if (widgetUsed[a]) continue;
-            final int i = a + offset;
-
-            HeadsUpNotificationView widget = mHolder.widgetList.get(i);
-            removing_all_next_views:
-            {
-                if (!removeAllAfter) {
-                    for (; j < notifyCount; j++) {
-                        if (notifyUsed[j]) continue;
-
-                        assert widget != null;
-                        notifyUsed[j] = true;
-
-                        widget.setNotification(list.get(j));
-                        widget.resetDecayTime();
-                        break removing_all_next_views;
-                    }
-                }
-                removeAllAfter = true;
-
-                // Remove widget's icon.
-                mHolder.containerView.removeView(widget);
-                mHolder.widgetList.remove(i);
-                offset--;
+        final KeyedDiff diff = mHolder.widgetDiff;
+        diff.diff(oldKeys, newKeys);
+
+        // Apply all changes at once.
+        final int count = diff.getCount();
+        if (count > 0) mAnimator.endAll();
+
+        boolean inserted = false;
+        for (int i = 0; i < count; i++) {
+            final int from = diff.getFrom(i);
+            final int to = diff.getTo(i);
+            switch (diff.getOp(i)) {
+                case KeyedDiff.OP_REMOVE:
+                    HeadsUpNotificationView widget = widgets.remove(from);
+                    mHolder.widgetMap.remove(oldKeys.get(from));
+                    mHolder.containerView.removeView(widget);
+                    recycleWidget(widget);
+                    break;
+                case KeyedDiff.OP_INSERT:
+                    widget = createWidget(list.get(to));
+                    widgets.add(from, widget);
+                    mHolder.widgetMap.put(newKeys.get(to), widget);
+                    addWidgetToContainer(widget, from);
+                    if (mAttached) mAnimator.animateAppearance(widget);
+                    inserted = true;
+                    break;
+                case KeyedDiff.OP_MOVE:
+                    widget = widgets.remove(from);
+                    mHolder.containerView.removeView(widget);
+                    widgets.add(to, widget);
+                    addWidgetToContainer(widget, to);
+                    break;
             }
         }
 
+        // Update the kept widgets.
         for (int i = 0; i < notifyCount; i++) {
-            if (notifyUsed[i]) continue;
-            postHeadsUp(list.get(i));
+            HeadsUpNotificationView widget = widgets.get(i);
+            OpenNotification n = list.get(i);
+            if (widget.getNotification() != n) {
+                widget.setNotification(n);
+                widget.resetDecayTime();
+            }
         }
 
         mHolder.rootView.preventInstantInteractivity();
+        if (inserted) show();
     }
 
     /**
@@ -482,9 +501,21 @@ public class HeadsUpBase implements
                     mShownAtTop = (boolean) value;
                 }
                 break;
+            case Config.KEY_UI_THEME:
+                // Views of the old theme are useless now.
+                mHolder.widgetPool.clear();
+                break;
         }
     }
 
+    /**
+     * Drops the recycled heads-up views.
+     */
+    @Override
+    public synchronized void onLowMemory() {
+        if (mHolder != null) mHolder.widgetPool.onLowMemory();
+    }
+
     /**
      * @return {@code true} if heads-up can be shown, {@code false} otherwise.
      */
@@ -504,10 +535,12 @@ public class HeadsUpBase implements
      * @see #detachFromWindow()
      */
     private void attachToWindow() {
+        // Stop the exit animation, if it's still
+        // running, and reset the container.
+        mAnimator.cancelHide(mHolder.containerView);
         if (mAttached) {
             // Can happen if the view is still running
             // exit animation.
-            mHolder.rootView.clearAnimation();
             detachFromWindow();
         } else {
             getConfig().getTriggers().incrementLaunchCount(mHolder.context, this);
@@ -542,6 +575,7 @@ public class HeadsUpBase implements
                 PixelFormat.TRANSLUCENT);
         lp.gravity = (mShownAtTop ? Gravity.TOP : Gravity.BOTTOM) | Gravity.CENTER_HORIZONTAL;
         mHolder.wm.addView(mHolder.rootView, lp);
+        mAnimator.animateShow(v, mShownAtTop);
     }
 
     /**
@@ -562,72 +596,159 @@ public class HeadsUpBase implements
     }
 
     void postHeadsUp(@NonNull OpenNotification notification) {
-        final ViewGroup container = mHolder.containerView;
         final ArrayList<HeadsUpNotificationView> list = mHolder.widgetList;
 
-        int index = indexOf(notification);
-        if (index != -1) {
-            if (Device.hasKitKatApi() && mHolder.containerView.isLaidOut()
-                    && !isPowerSaveMode()) {
-                TransitionManager.beginDelayedTransition(mHolder.containerView);
-            }
-
-            final int i = indexOf(notification);
-            HeadsUpNotificationView widget = list.get(i);
+        HeadsUpNotificationView widget = getWidget(notification);
+        if (widget != null) {
             widget.setNotification(notification);
             widget.resetDecayTime();
 
             mHolder.rootView.preventInstantInteractivity();
         } else {
+            final long start = SystemClock.uptimeMillis();
+            widget = createWidget(notification);
 
-            // Get selected theme.
-            // TODO: Implement custom themes.
-            final String theme = getConfig().getTheme();
-            final int themeRes = "dark".equals(theme)
-                    ? R.style.HeadsUp_Theme_Dark
-                    : R.style.HeadsUp_Theme;
-
-            // Create a context with selected style.
-            Context context = new ContextThemeWrapper(mHolder.context, themeRes);
-
-            // Get layout resource.
-            TypedArray typedArray = context.obtainStyledAttributes(
-                    new int[]{R.styleable.Theme_headsUpNotificationLayout});
-            final int layoutRes = typedArray.getInt(0, R.layout.heads_up_notification);
-            typedArray.recycle();
-
-            // Inflate notification widget.
-            final LayoutInflater inflater = (LayoutInflater) context
-                    .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            final HeadsUpNotificationView widget = (HeadsUpNotificationView) inflater
-                    .inflate(layoutRes, container, false);
-
-            // Setup widget
-            widget.setHeadsUpManager(this);
-            widget.setNotification(notification);
-            widget.setOnClickListener(mOnWidgetClickListener);
-            widget.resetDecayTime();
-
-            int pos = getConfig().isShownAtTop()
-                    ? container.getChildCount() - mHolder.containerOffset : 0;
             mHolder.rootView.preventInstantInteractivity();
-            container.addView(widget, pos);
+            mAnimator.endAll();
             list.add(widget);
+            mHolder.widgetMap.put(notification.getIdentityKey(), widget);
+            addWidgetToContainer(widget, list.size() - 1);
+            if (mAttached) mAnimator.animateAppearance(widget);
+            measureTimeToFirstFrame(widget, start);
 
             show();
         }
     }
 
+    /**
+     * @return a recycled widget of selected theme, or new one, set up to
+     * show given notification.
+     */
+    @NonNull
+    private HeadsUpNotificationView createWidget(@NonNull OpenNotification notification) {
+        final HeadsUpNotificationView widget = mHolder.widgetPool
+                .obtain(getConfig().getTheme(), mHolder.containerView);
+
+        // Setup widget
+        widget.setHeadsUpManager(this);
+        widget.setNotification(notification);
+        widget.setOnClickListener(mOnWidgetClickListener);
+        widget.resetDecayTime();
+        return widget;
+    }
+
+    /**
+     * Cancels the pending animations of the widget and
+     * returns it to the pool.
+     */
+    private void recycleWidget(@NonNull HeadsUpNotificationView widget) {
+        mAnimator.cancelAppearance(widget);
+        mHolder.widgetPool.recycle(widget);
+    }
+
+    /**
+     * Adds the widget to {@link #mHolder#containerView container}, so it appears at
+     * the same position as in the {@link #mHolder#widgetList list}: new widgets are
+     * closer to the edge of the screen heads-up is shown at.
+     *
+     * @param index the position of the widget in the list.
+     */
+    private void addWidgetToContainer(@NonNull HeadsUpNotificationView widget, int index) {
+        final int pos = getConfig().isShownAtTop()
+                ? index : mHolder.widgetList.size() - 1 - index;
+        mHolder.containerView.addView(widget, pos);
+    }
+
+    /**
+     * Measures the time from starting to post the heads-up
+     * to drawing its first frame.
+     *
+     * @see #getAverageTimeToFirstFrame()
+     */
+    private void measureTimeToFirstFrame(@NonNull final View view, final long start) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                final long delta = SystemClock.uptimeMillis() - start;
+                mFirstFrameCount++;
+                mFirstFrameTotalTime += delta;
+                mFirstFrameMaxTime = Math.max(mFirstFrameMaxTime, delta);
+                if (DEBUG) Log.d(TAG, "Time-to-first-frame of heads-up: " + delta + " millis.");
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return the average time from starting to post a new heads-up to
+     * drawing its first frame, in millis.
+     * @see #getMaxTimeToFirstFrame()
+     */
+    public long getAverageTimeToFirstFrame() {
+        return mFirstFrameCount == 0 ? 0 : mFirstFrameTotalTime / mFirstFrameCount;
+    }
+
+    /**
+     * @return the maximum time from starting to post a new heads-up to
+     * drawing its first frame, in millis.
+     * @see #getAverageTimeToFirstFrame()
+     */
+    public long getMaxTimeToFirstFrame() {
+        return mFirstFrameMaxTime;
+    }
+
+    /**
+     * @return the number of frames drawn while heads-up animations were running.
+     * @see #getJankyFrameCount()
+     */
+    public int getAnimationFrameCount() {
+        return mAnimator == null ? 0 : mAnimator.getFrameCount();
+    }
+
+    /**
+     * @return the number of frames of heads-up animations that took
+     * longer than one refresh interval.
+     * @see #getDroppedFrameCount()
+     */
+    public int getJankyFrameCount() {
+        return mAnimator == null ? 0 : mAnimator.getJankyFrameCount();
+    }
+
+    /**
+     * @return the number of refresh intervals missed by heads-up animations.
+     * @see #getJankyFrameCount()
+     */
+    public int getDroppedFrameCount() {
+        return mAnimator == null ? 0 : mAnimator.getDroppedFrameCount();
+    }
+
+    /**
+     * @return the number of heads-up animations skipped because
+     * too many frames were dropped recently.
+     */
+    public int getDroppedAnimationCount() {
+        return mAnimator == null ? 0 : mAnimator.getDroppedAnimationCount();
+    }
+
     public void removeHeadsUp(@NonNull OpenNotification notification) {
-        int index = indexOf(notification);
-        if (index != -1) {
+        final HeadsUpNotificationView view = getWidget(notification);
+        if (view != null) {
             int size = mHolder.widgetList.size();
             if (size > 1) {
-                // Remove view from the container.
-                View view = mHolder.widgetList.get(index);
-                if (!isPowerSaveMode()) addSpaceToContainer(view.getHeight());
-                mHolder.containerView.removeView(view);
-                mHolder.widgetList.remove(index);
+                mAnimator.endAll();
+                mHolder.widgetList.remove(view);
+                mHolder.widgetMap.remove(notification.getIdentityKey());
+
+                // Remove view from the container, when
+                // the animation is over.
+                mAnimator.animateRemoval(mHolder.containerView, view, mShownAtTop, new Runnable() {
+                    @Override
+                    public void run() {
+                        recycleWidget(view);
+                    }
+                });
 
                 mHolder.rootView.preventInstantInteractivity();
             } else {
@@ -637,41 +758,12 @@ public class HeadsUpBase implements
     }
 
     /**
-     * @return the position of given {@link com.achep.acdisplay.notifications.OpenNotification} in
-     * {@link #mHolder#mWidgetList list}, or {@code -1} if not found.
+     * @return the widget of given {@link com.achep.acdisplay.notifications.OpenNotification},
+     * or {@code null} if not found.
      */
-    int indexOf(final @NonNull OpenNotification notification) {
-        final ArrayList<HeadsUpNotificationView> list = mHolder.widgetList;
-        final int size = list.size();
-        for (int i = 0; i < size; i++) {
-            OpenNotification n2 = list.get(i).getNotification();
-            if (NotificationUtils.hasIdenticalIds(notification, n2)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    /**
-     * Adds empty space view to {@link #mHolder#containerView container} for a
-     * short {@link #LAYOUT_ANIMATION_TIME}. This uses {@link #mHandler}!
-     *
-     * @param height height of space view in pixels.
-     */
-    private void addSpaceToContainer(final int height) {
-        final Space space = new Space(mHolder.context);
-        final ViewGroup.LayoutParams lp = new LinearLayout.LayoutParams(0, height);
-        mHolder.containerView.addView(space, lp);
-        mHolder.containerOffset++;
-
-        // Remove space view after a while.
-        mHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                mHolder.containerView.removeView(space);
-                mHolder.containerOffset--;
-            }
-        }, LAYOUT_ANIMATION_TIME);
+    @Nullable
+    HeadsUpNotificationView getWidget(final @NonNull OpenNotification notification) {
+        return mHolder.widgetMap.get(notification.getIdentityKey());
     }
 
     private boolean isPowerSaveMode() {
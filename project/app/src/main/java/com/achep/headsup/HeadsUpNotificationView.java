@@ -27,16 +27,15 @@ import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
-import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.achep.acdisplay.Config;
 import com.achep.acdisplay.Timeout;
+import com.achep.acdisplay.notifications.NotificationPresenter;
 import com.achep.acdisplay.notifications.OpenNotification;
 import com.achep.acdisplay.ui.widgets.notification.NotificationWidget;
 import com.achep.base.Build;
 import com.achep.base.utils.RippleUtils;
-import com.achep.base.utils.ViewUtils;
 
 /**
  * Created by Artem Chepurnoy on 16.09.2014.
@@ -50,7 +49,6 @@ public class HeadsUpNotificationView extends NotificationWidget implements
 
     public final Timeout mTimeout;
     private Timeout.Gui mTimeoutGui;
-    private ProgressBar mProgressBar;
 
     private boolean mDarkTheme;
 
@@ -58,6 +56,15 @@ public class HeadsUpNotificationView extends NotificationWidget implements
 
     private HeadsUpBase mHeadsUpBase;
 
+    // Running #hide() in the thread of timeout may cause the
+    // java.util.ConcurrentModificationException.
+    private final Runnable mHideRunnable = new Runnable() {
+        @Override
+        public void run() {
+            hide();
+        }
+    };
+
     public HeadsUpNotificationView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
     }
@@ -79,6 +86,8 @@ public class HeadsUpNotificationView extends NotificationWidget implements
         mHeadsUpBase = headsUpBase;
 
         mSwipeHelperX.setPowerSaveDetector(headsUpBase.getPowerSaveDetector());
+        mSwipeHelperX.setVelocityTracker(headsUpBase.getVelocityTracker());
+        mTimeoutGui.setPowerSaveDetector(headsUpBase.getPowerSaveDetector());
     }
 
     /**
@@ -108,10 +117,22 @@ public class HeadsUpNotificationView extends NotificationWidget implements
      */
     private void hide() {
         OpenNotification notification = getNotification();
+        if (notification == null) return; // recycled
         notification.markAsRead();
         mHeadsUpBase.removeHeadsUp(notification);
     }
 
+    /**
+     * Hides this HeadsUp view, and does not show the notification
+     * again until the snooze expires.
+     */
+    private void snooze() {
+        OpenNotification notification = getNotification();
+        final long duration = getResources().getInteger(R.integer.config_headsup_snooze_duration);
+        NotificationPresenter.getInstance().snoozeNotification(getContext(), notification, duration);
+        mHeadsUpBase.removeHeadsUp(notification);
+    }
+
     @Override
     protected void onFinishInflate() {
         super.onFinishInflate();
@@ -123,8 +144,26 @@ public class HeadsUpNotificationView extends NotificationWidget implements
             RippleUtils.makeFor(false /* parent is scrollable */, mDarkTheme, content);
         }
 
-        mProgressBar = (ProgressBar) findViewById(R.id.progress_bar);
-        mTimeoutGui = new Timeout.Gui(mProgressBar);
+        mTimeoutGui = new Timeout.Gui(findViewById(R.id.progress_bar));
+    }
+
+    /**
+     * Resets the state left by swipes and animations, so the view
+     * can be reused by the {@link HeadsUpViewPool}.
+     */
+    void onRecycle() {
+        // A dismissal animation may still be running: it must
+        // not dismiss the next notification of this view.
+        mSwipeHelperX.cancel();
+        removeCallbacks(mHideRunnable);
+        clearAnimation();
+        setLayerType(LAYER_TYPE_NONE, null);
+        setTranslationX(0);
+        setTranslationY(0);
+        setScaleX(1);
+        setScaleY(1);
+        setAlpha(1);
+        setNotification(null);
     }
 
     @Override
@@ -138,7 +177,6 @@ public class HeadsUpNotificationView extends NotificationWidget implements
     @Override
     public void onAttachedToWindow() {
         super.onAttachedToWindow();
-        ViewUtils.setVisible(mProgressBar, false);
         mTimeout.registerListener(this);
         mTimeout.registerListener(mTimeoutGui);
         // Update the timeout
@@ -189,11 +227,13 @@ public class HeadsUpNotificationView extends NotificationWidget implements
 
         // Translate touch event too to correspond with
         // view's translation changes and prevent lags
-        // while swiping.
-        final MotionEvent ev = MotionEvent.obtainNoHistory(event);
-        ev.offsetLocation(getTranslationX(), getTranslationY());
-        boolean handled = mSwipeHelperX.onTouchEvent(ev);
-        ev.recycle();
+        // while swiping. This is done in place, to not
+        // copy the event on each move.
+        final float dx = getTranslationX();
+        final float dy = getTranslationY();
+        event.offsetLocation(dx, dy);
+        boolean handled = mSwipeHelperX.onTouchEvent(event);
+        event.offsetLocation(-dx, -dy);
 
         return handled || super.onTouchEvent(event);
     }
@@ -216,14 +256,7 @@ public class HeadsUpNotificationView extends NotificationWidget implements
     public void onTimeoutEvent(@NonNull Timeout timeout, int event) {
         switch (event) {
             case Timeout.EVENT_TIMEOUT:
-                // Running #hide() in this thread may cause the
-                // java.util.ConcurrentModificationException.
-                post(new Runnable() {
-                    @Override
-                    public void run() {
-                        hide();
-                    }
-                });
+                post(mHideRunnable);
                 break;
         }
     }
@@ -270,7 +303,8 @@ public class HeadsUpNotificationView extends NotificationWidget implements
                 hide();
                 break;
             case Config.ST_SNOOZE:
-                // TODO: Implement swipe-to-snooze
+                snooze();
+                break;
             default:
                 throw new IllegalArgumentException();
         }
@@ -23,6 +23,7 @@ import android.content.res.Configuration;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
@@ -35,6 +36,7 @@ public class HeadsUpView extends FrameLayout implements
         SwipeHelper.Callback {
 
     private final SwipeHelper mSwipeHelperY;
+    private final VelocityTracker mVelocityTracker = VelocityTracker.obtain();
     private final int mTouchSensitivityDelay;
     private long mStartTouchTime;
 
@@ -55,6 +57,7 @@ public class HeadsUpView extends FrameLayout implements
         float densityScale = getResources().getDisplayMetrics().density;
         float pagingTouchSlop = ViewConfiguration.get(getContext()).getScaledPagingTouchSlop();
         mSwipeHelperY = new SwipeHelper(SwipeHelper.TOP, this, densityScale, pagingTouchSlop, false);
+        mSwipeHelperY.setVelocityTracker(mVelocityTracker);
     }
 
     @Override
@@ -91,6 +94,39 @@ public class HeadsUpView extends FrameLayout implements
         return System.currentTimeMillis() < mStartTouchTime;
     }
 
+    /**
+     * @return the velocity tracker of the touches of this window, shared by
+     * all {@link SwipeHelper swipe helpers} in it.
+     */
+    @NonNull
+    public VelocityTracker getVelocityTracker() {
+        return mVelocityTracker;
+    }
+
+    /**
+     * Recycles the shared velocity tracker. The view must
+     * not be used after this.
+     *
+     * @see #getVelocityTracker()
+     */
+    void recycle() {
+        mSwipeHelperY.setVelocityTracker(null);
+        mVelocityTracker.recycle();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean dispatchTouchEvent(@NonNull MotionEvent event) {
+        // Feed the shared velocity tracker once per event, in the
+        // coordinates of this view, which never moves.
+        final int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) mVelocityTracker.clear();
+        if (action != MotionEvent.ACTION_OUTSIDE) mVelocityTracker.addMovement(event);
+        return super.dispatchTouchEvent(event);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.headsup;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import com.achep.base.interfaces.IOnLowMemory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static com.achep.base.Build.DEBUG;
+
+/**
+ * The pool of recycled {@link HeadsUpNotificationView heads-up views} per theme.
+ * Inflating a heads-up view (with its ripples) is expensive, and the views are
+ * the same for any notification, so removed views are kept here to be reused.
+ *
+ * @author Artem Chepurnoy
+ */
+final class HeadsUpViewPool implements IOnLowMemory {
+
+    private static final String TAG = "HeadsUpViewPool";
+
+    @NonNull
+    private final Context mContext;
+    @NonNull
+    private final HashMap<String, Theme> mThemes = new HashMap<>(2);
+    private final int mMaxSize;
+
+    private int mInflatedCount;
+    private int mReusedCount;
+
+    /**
+     * The resolved theme with its own pool of views.
+     */
+    private static final class Theme {
+
+        @NonNull
+        final String name;
+        @NonNull
+        final Context context;
+        final int layoutRes;
+        @NonNull
+        final ArrayList<HeadsUpNotificationView> views;
+
+        Theme(@NonNull String name, @NonNull Context context, int layoutRes, int maxSize) {
+            this.name = name;
+            this.context = context;
+            this.layoutRes = layoutRes;
+            this.views = new ArrayList<>(maxSize);
+        }
+
+    }
+
+    /**
+     * @param maxSize the maximum number of recycled views per theme.
+     */
+    HeadsUpViewPool(@NonNull Context context, int maxSize) {
+        mContext = context;
+        mMaxSize = maxSize;
+    }
+
+    @NonNull
+    private Theme getTheme(@NonNull String theme) {
+        Theme t = mThemes.get(theme);
+        if (t == null) {
+            // TODO: Implement custom themes.
+            final int themeRes = "dark".equals(theme)
+                    ? R.style.HeadsUp_Theme_Dark
+                    : R.style.HeadsUp_Theme;
+
+            // Create a context with selected style.
+            Context context = new ContextThemeWrapper(mContext, themeRes);
+
+            // Get layout resource.
+            TypedArray typedArray = context.obtainStyledAttributes(
+                    new int[]{R.styleable.Theme_headsUpNotificationLayout});
+            final int layoutRes = typedArray.getInt(0, R.layout.heads_up_notification);
+            typedArray.recycle();
+
+            t = new Theme(theme, context, layoutRes, mMaxSize);
+            mThemes.put(theme, t);
+        }
+        return t;
+    }
+
+    /**
+     * Returns a recycled view of the theme, or inflates a new one.
+     *
+     * @param container the future parent of the view.
+     */
+    @NonNull
+    HeadsUpNotificationView obtain(@NonNull String theme, @NonNull ViewGroup container) {
+        Theme t = getTheme(theme);
+        final int size = t.views.size();
+        if (size > 0) {
+            mReusedCount++;
+            return t.views.remove(size - 1);
+        }
+
+        mInflatedCount++;
+        return inflate(t, container);
+    }
+
+    @NonNull
+    private HeadsUpNotificationView inflate(@NonNull Theme t, @NonNull ViewGroup container) {
+        final LayoutInflater inflater = (LayoutInflater) t.context
+                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        HeadsUpNotificationView view = (HeadsUpNotificationView) inflater
+                .inflate(t.layoutRes, container, false);
+        view.setTag(R.id.heads_up_pool_theme, t);
+        return view;
+    }
+
+    /**
+     * Puts the view back to the pool, if the pool of its theme is not full. The view
+     * must be removed from its parent before.
+     */
+    void recycle(@NonNull HeadsUpNotificationView view) {
+        Object tag = view.getTag(R.id.heads_up_pool_theme);
+        if (!(tag instanceof Theme)) return;
+
+        // Drop the views of cleared themes.
+        Theme t = (Theme) tag;
+        if (mThemes.get(t.name) != t || t.views.size() >= mMaxSize) return;
+
+        view.onRecycle();
+        t.views.add(view);
+    }
+
+    /**
+     * Inflates the views of the theme to fill its pool.
+     */
+    void prewarm(@NonNull String theme, @NonNull ViewGroup container) {
+        Theme t = getTheme(theme);
+        while (t.views.size() < mMaxSize) t.views.add(inflate(t, container));
+        if (DEBUG) Log.d(TAG, "Pre-inflated " + t.views.size() + " heads-up views of the "
+                + theme + " theme.");
+    }
+
+    /**
+     * Drops all recycled views, e.g. on theme change.
+     */
+    void clear() {
+        mThemes.clear();
+    }
+
+    /**
+     * Drops all recycled views.
+     */
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    /**
+     * @return how many views were inflated, because
+     * there was no one to reuse.
+     */
+    int getInflatedCount() {
+        return mInflatedCount;
+    }
+
+    /**
+     * @return how many views were reused.
+     */
+    int getReusedCount() {
+        return mReusedCount;
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.headsup;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Computes the minimal list of operations that turns the old list of keys into
+ * the new one: the items missing from the new list are removed, the new items are
+ * inserted, and of the kept items only those out of the longest increasing run
+ * are moved. The operations are meant to be applied one by one, in order, so
+ * each index refers to the list with all previous operations applied.
+ * <p/>
+ * The buffers are reused, so diffing lists of the same size again
+ * doesn't allocate anything but the boxed indices.
+ *
+ * @author Artem Chepurnoy
+ */
+final class KeyedDiff {
+
+    /**
+     * Remove the item at the {@link #getFrom(int) index}.
+     */
+    static final int OP_REMOVE = 0;
+
+    /**
+     * Insert the {@link #getTo(int) new item} at the {@link #getFrom(int) index}.
+     */
+    static final int OP_INSERT = 1;
+
+    /**
+     * Remove the item at the {@link #getFrom(int) index} and insert
+     * it at the {@link #getTo(int) index}.
+     */
+    static final int OP_MOVE = 2;
+
+    @NonNull
+    private final HashMap<Object, Integer> mNewIndices = new HashMap<>();
+
+    @NonNull
+    private int[] mOps = new int[0];
+    @NonNull
+    private int[] mFrom = new int[0];
+    @NonNull
+    private int[] mTo = new int[0];
+    private int mOpCount;
+
+    // The new indices of the current items.
+    @NonNull
+    private int[] mCurrent = new int[0];
+    private int mCurrentSize;
+
+    @NonNull
+    private int[] mOldToNew = new int[0];
+    @NonNull
+    private boolean[] mKept = new boolean[0];
+    @NonNull
+    private boolean[] mStable = new boolean[0];
+
+    // Longest increasing subsequence.
+    @NonNull
+    private int[] mTails = new int[0];
+    @NonNull
+    private int[] mPrev = new int[0];
+
+    /**
+     * Diffs the lists of keys. The keys of each list must be unique.
+     *
+     * @see #getCount()
+     * @see #getOp(int)
+     */
+    void diff(@NonNull List<?> oldKeys, @NonNull List<?> newKeys) {
+        final int oldSize = oldKeys.size();
+        final int newSize = newKeys.size();
+        ensureCapacity(oldSize, newSize);
+        mOpCount = 0;
+
+        mNewIndices.clear();
+        for (int i = 0; i < newSize; i++) {
+            mNewIndices.put(newKeys.get(i), i);
+            mKept[i] = false;
+            mStable[i] = false;
+        }
+
+        // Remove the items from the end, so the
+        // indices of the next ones stay valid.
+        for (int i = oldSize - 1; i >= 0; i--) {
+            Integer j = mNewIndices.get(oldKeys.get(i));
+            if (j == null || mKept[j]) {
+                mOldToNew[i] = -1;
+                addOp(OP_REMOVE, i, -1);
+            } else {
+                mOldToNew[i] = j;
+                mKept[j] = true;
+            }
+        }
+
+        mCurrentSize = 0;
+        for (int i = 0; i < oldSize; i++) {
+            if (mOldToNew[i] != -1) mCurrent[mCurrentSize++] = mOldToNew[i];
+        }
+
+        markStable();
+
+        // Put each item right before the next one, from the end;
+        // the stable items are in the right order already.
+        for (int j = newSize - 1; j >= 0; j--) {
+            if (mStable[j]) continue;
+
+            final int anchor = j == newSize - 1 ? mCurrentSize : positionOf(j + 1);
+            if (mKept[j]) {
+                final int from = positionOf(j);
+                final int to = from < anchor ? anchor - 1 : anchor;
+                removeCurrent(from);
+                insertCurrent(to, j);
+                addOp(OP_MOVE, from, to);
+            } else {
+                insertCurrent(anchor, j);
+                addOp(OP_INSERT, anchor, j);
+            }
+        }
+    }
+
+    /**
+     * Marks the longest increasing subsequence of the current items as stable.
+     */
+    private void markStable() {
+        int length = 0;
+        for (int i = 0; i < mCurrentSize; i++) {
+            final int value = mCurrent[i];
+
+            // Find the first tail that is not less than the value.
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (mCurrent[mTails[mid]] < value) {
+                    lo = mid + 1;
+                } else hi = mid;
+            }
+
+            mPrev[i] = lo > 0 ? mTails[lo - 1] : -1;
+            mTails[lo] = i;
+            if (lo == length) length++;
+        }
+
+        for (int i = length > 0 ? mTails[length - 1] : -1; i != -1; i = mPrev[i]) {
+            mStable[mCurrent[i]] = true;
+        }
+    }
+
+    private int positionOf(int j) {
+        for (int i = 0; i < mCurrentSize; i++) {
+            if (mCurrent[i] == j) return i;
+        }
+        throw new IllegalStateException();
+    }
+
+    private void removeCurrent(int i) {
+        System.arraycopy(mCurrent, i + 1, mCurrent, i, --mCurrentSize - i);
+    }
+
+    private void insertCurrent(int i, int j) {
+        System.arraycopy(mCurrent, i, mCurrent, i + 1, mCurrentSize++ - i);
+        mCurrent[i] = j;
+    }
+
+    private void addOp(int op, int from, int to) {
+        mOps[mOpCount] = op;
+        mFrom[mOpCount] = from;
+        mTo[mOpCount] = to;
+        mOpCount++;
+    }
+
+    private void ensureCapacity(int oldSize, int newSize) {
+        final int opsSize = oldSize + newSize;
+        if (mOps.length < opsSize) {
+            mOps = new int[opsSize];
+            mFrom = new int[opsSize];
+            mTo = new int[opsSize];
+        }
+        final int size = Math.max(oldSize, newSize);
+        if (mCurrent.length < size) {
+            mCurrent = new int[size];
+            mTails = new int[size];
+            mPrev = new int[size];
+        }
+        if (mOldToNew.length < oldSize) mOldToNew = new int[oldSize];
+        if (mKept.length < newSize) {
+            mKept = new boolean[newSize];
+            mStable = new boolean[newSize];
+        }
+    }
+
+    /**
+     * @return the number of operations.
+     */
+    int getCount() {
+        return mOpCount;
+    }
+
+    /**
+     * @return one of {@link #OP_REMOVE}, {@link #OP_INSERT} or {@link #OP_MOVE}.
+     */
+    int getOp(int i) {
+        return mOps[i];
+    }
+
+    /**
+     * @return the index of the item in the current list.
+     */
+    int getFrom(int i) {
+        return mFrom[i];
+    }
+
+    /**
+     * @return the index of the new item for the {@link #OP_INSERT insert},
+     * or the index to move the item to for the {@link #OP_MOVE move}.
+     */
+    int getTo(int i) {
+        return mTo[i];
+    }
+
+}
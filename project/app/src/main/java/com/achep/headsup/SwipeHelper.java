@@ -29,11 +29,17 @@ import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.accessibility.AccessibilityEvent;
+import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.LinearInterpolator;
 
 import com.achep.base.utils.power.PowerSaveDetector;
 import com.achep.headsup.interfaces.Gefingerpoken;
 
+/**
+ * Swipes the views away. Nothing is allocated per touch event: the velocity tracker
+ * may be {@link #setVelocityTracker(VelocityTracker) shared} by all swipe helpers of
+ * a window, and the animator and its listeners are reused.
+ */
 public class SwipeHelper implements Gefingerpoken {
     static final String TAG = "SwipeHelper";
     private static final boolean DEBUG = false;
@@ -50,6 +56,8 @@ public class SwipeHelper implements Gefingerpoken {
     public static final int BOTTOM = 3;
 
     private static LinearInterpolator sLinearInterpolator = new LinearInterpolator();
+    private static AccelerateDecelerateInterpolator sSnapInterpolator =
+            new AccelerateDecelerateInterpolator();
 
     private float SWIPE_ESCAPE_VELOCITY = 100f; // dp/sec
     private int DEFAULT_ESCAPE_ANIMATION_DURATION = 200; // ms
@@ -57,6 +65,11 @@ public class SwipeHelper implements Gefingerpoken {
     private int MAX_DISMISS_VELOCITY = 2000; // dp/sec
     private static final int SNAP_ANIM_LEN = SLOW_ANIMATIONS ? 1000 : 150; // ms
 
+    static final float SWIPED_FAR_ENOUGH_SIZE_FRACTION = 0.4f;
+    // how far ahead to predict the position of
+    // a flung view, when deciding to dismiss it
+    static final float FLING_PREDICTION_TIME = 0.1f; // sec
+
     public static float ALPHA_FADE_START = 0f; // fraction of thumbnail width
     // where fade starts
     static final float ALPHA_FADE_END = 0.5f; // fraction of thumbnail width
@@ -68,6 +81,7 @@ public class SwipeHelper implements Gefingerpoken {
     private Handler mHandler;
     private int mSwipeDirection;
     private VelocityTracker mVelocityTracker;
+    private boolean mVelocityTrackerShared;
 
     private float mInitialTouchPos;
     private boolean mDragging;
@@ -83,12 +97,45 @@ public class SwipeHelper implements Gefingerpoken {
 
     private PowerSaveDetector mPowerSaveDetector;
 
+    // the reused animation of the dismissal or the snap
+    private ObjectAnimator mAnimator;
+    private View mAnimatorView;
+    private View mAnimatorAnimView;
+    private boolean mAnimatorDismiss;
+    private boolean mAnimatorDismissable;
+    private boolean mAnimatorCanceled;
+    private final RectF mInvalidateRect = new RectF();
+
+    private final AnimatorUpdateListener mAnimatorUpdateListener = new AnimatorUpdateListener() {
+        public void onAnimationUpdate(ValueAnimator animation) {
+            updateAlphaFromOffset(mAnimatorAnimView, mAnimatorDismissable);
+        }
+    };
+
+    private final AnimatorListenerAdapter mAnimatorListener = new AnimatorListenerAdapter() {
+        public void onAnimationCancel(Animator animation) {
+            mAnimatorCanceled = true;
+        }
+
+        public void onAnimationEnd(Animator animation) {
+            final View view = mAnimatorView;
+            final View animView = mAnimatorAnimView;
+            mAnimatorView = null;
+            mAnimatorAnimView = null;
+            if (mAnimatorDismiss) {
+                animView.setLayerType(View.LAYER_TYPE_NONE, null);
+                if (!mAnimatorCanceled) mCallback.onChildDismissed(view);
+            } else {
+                updateAlphaFromOffset(animView, mAnimatorDismissable);
+            }
+        }
+    };
+
     public SwipeHelper(int swipeDirection, Callback callback, float densityScale,
                        float pagingTouchSlop) {
         mCallback = callback;
         mHandler = new Handler();
         mSwipeDirection = swipeDirection;
-        mVelocityTracker = VelocityTracker.obtain();
         mDensityScale = densityScale;
         mPagingTouchSlop = pagingTouchSlop;
 
@@ -109,6 +156,28 @@ public class SwipeHelper implements Gefingerpoken {
         mPowerSaveDetector = psd;
     }
 
+    /**
+     * Sets the velocity tracker shared by all swipe helpers of the window. The owner
+     * of the window must feed it with all touch events, in the same coordinates,
+     * and clear it on {@link MotionEvent#ACTION_DOWN}.
+     *
+     * @param tracker the shared tracker, or {@code null} to use own one.
+     */
+    public void setVelocityTracker(VelocityTracker tracker) {
+        mVelocityTrackerShared = tracker != null;
+        mVelocityTracker = tracker;
+    }
+
+    private void clearVelocityTracker() {
+        if (!mVelocityTrackerShared && mVelocityTracker != null) mVelocityTracker.clear();
+    }
+
+    private void addMovement(MotionEvent ev) {
+        if (mVelocityTrackerShared) return;
+        if (mVelocityTracker == null) mVelocityTracker = VelocityTracker.obtain();
+        mVelocityTracker.addMovement(ev);
+    }
+
     public void setLongPressListener(View.OnLongClickListener listener) {
         mLongPressListener = listener;
     }
@@ -134,9 +203,27 @@ public class SwipeHelper implements Gefingerpoken {
                 vt.getYVelocity();
     }
 
-    private ObjectAnimator createTranslationAnimation(View v, float newPos) {
-        return ObjectAnimator.ofFloat(v,
-                mSwipeDirection == X ? "translationX" : "translationY", newPos);
+    /**
+     * Sets up the reused animator to translate the view. The animation that runs
+     * now is canceled, and its dismissal is not reported.
+     */
+    private ObjectAnimator setupTranslationAnimation(View view, View animView, float newPos,
+                                                     boolean dismiss, boolean dismissable) {
+        if (mAnimator == null) {
+            mAnimator = new ObjectAnimator();
+            mAnimator.addUpdateListener(mAnimatorUpdateListener);
+            mAnimator.addListener(mAnimatorListener);
+        } else mAnimator.cancel();
+
+        mAnimatorView = view;
+        mAnimatorAnimView = animView;
+        mAnimatorDismiss = dismiss;
+        mAnimatorDismissable = dismissable;
+        mAnimatorCanceled = false;
+        mAnimator.setTarget(animView);
+        mAnimator.setProperty(mSwipeDirection == X ? View.TRANSLATION_X : View.TRANSLATION_Y);
+        mAnimator.setFloatValues(newPos);
+        return mAnimator;
     }
 
     private float getPerpendicularVelocity(VelocityTracker vt) {
@@ -188,7 +275,9 @@ public class SwipeHelper implements Gefingerpoken {
             }
             animView.setAlpha(getAlphaForOffset(animView));
         }
-        invalidateGlobalRegion(animView);
+        mInvalidateRect.set(animView.getLeft(), animView.getTop(),
+                animView.getRight(), animView.getBottom());
+        invalidateGlobalRegion(animView, mInvalidateRect);
     }
 
     // invalidate the view's own bounds all the way up the view hierarchy
@@ -220,6 +309,19 @@ public class SwipeHelper implements Gefingerpoken {
         }
     }
 
+    /**
+     * Cancels the running dismiss or snap animation and the current drag,
+     * without reporting the dismissal. This should be called before the
+     * view is reused.
+     */
+    public void cancel() {
+        if (mAnimator != null) mAnimator.cancel();
+        removeLongPressCallback();
+        mDragging = false;
+        mCurrView = null;
+        mCurrAnimView = null;
+    }
+
     public void removeLongPressCallback() {
         if (mWatchLongPress != null) {
             mHandler.removeCallbacks(mWatchLongPress);
@@ -236,11 +338,11 @@ public class SwipeHelper implements Gefingerpoken {
                 mDragging = false;
                 mLongPressSent = false;
                 mCurrView = mCallback.getChildAtPosition(ev);
-                mVelocityTracker.clear();
+                clearVelocityTracker();
                 if (mCurrView != null) {
                     mCurrAnimView = mCallback.getChildContentView(mCurrView);
                     mCanCurrViewBeDimissed = mCallback.canChildBeDismissed(mCurrView);
-                    mVelocityTracker.addMovement(ev);
+                    addMovement(ev);
                     mInitialTouchPos = getPos(ev);
 
                     if (mLongPressListener != null) {
@@ -264,7 +366,7 @@ public class SwipeHelper implements Gefingerpoken {
 
             case MotionEvent.ACTION_MOVE:
                 if (mCurrView != null && !mLongPressSent) {
-                    mVelocityTracker.addMovement(ev);
+                    addMovement(ev);
                     float pos = getPos(ev);
                     float delta = pos - mInitialTouchPos;
                     if (Math.abs(delta) > mPagingTouchSlop) {
@@ -321,40 +423,22 @@ public class SwipeHelper implements Gefingerpoken {
             return;
         }
 
+        ObjectAnimator anim = setupTranslationAnimation(view, animView, newPos,
+                true, canAnimViewBeDismissed);
         animView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
-        ObjectAnimator anim = createTranslationAnimation(animView, newPos);
         anim.setInterpolator(sLinearInterpolator);
         anim.setDuration(duration);
-        anim.addListener(new AnimatorListenerAdapter() {
-            public void onAnimationEnd(Animator animation) {
-                mCallback.onChildDismissed(view);
-                animView.setLayerType(View.LAYER_TYPE_NONE, null);
-            }
-        });
-        anim.addUpdateListener(new AnimatorUpdateListener() {
-            public void onAnimationUpdate(ValueAnimator animation) {
-                updateAlphaFromOffset(animView, canAnimViewBeDismissed);
-            }
-        });
         anim.start();
     }
 
-    public void snapChild(final View view, float velocity) {
+    public void snapChild(View view, float velocity) {
         final View animView = mCallback.getChildContentView(view);
         final boolean canAnimViewBeDismissed = mCallback.canChildBeDismissed(animView);
-        ObjectAnimator anim = createTranslationAnimation(animView, 0);
+        ObjectAnimator anim = setupTranslationAnimation(view, animView, 0,
+                false, canAnimViewBeDismissed);
         int duration = SNAP_ANIM_LEN;
+        anim.setInterpolator(sSnapInterpolator);
         anim.setDuration(duration);
-        anim.addUpdateListener(new AnimatorUpdateListener() {
-            public void onAnimationUpdate(ValueAnimator animation) {
-                updateAlphaFromOffset(animView, canAnimViewBeDismissed);
-            }
-        });
-        anim.addListener(new AnimatorListenerAdapter() {
-            public void onAnimationEnd(Animator animator) {
-                updateAlphaFromOffset(animView, canAnimViewBeDismissed);
-            }
-        });
         anim.start();
     }
 
@@ -371,7 +455,7 @@ public class SwipeHelper implements Gefingerpoken {
             return false;
         }
 
-        mVelocityTracker.addMovement(ev);
+        addMovement(ev);
         final int action = ev.getAction();
         switch (action) {
             case MotionEvent.ACTION_OUTSIDE:
@@ -397,16 +481,24 @@ public class SwipeHelper implements Gefingerpoken {
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL:
                 if (mCurrView != null) {
-                    float maxVelocity = MAX_DISMISS_VELOCITY * mDensityScale;
-                    mVelocityTracker.computeCurrentVelocity(1000 /* px/sec */, maxVelocity);
+                    float velocity = 0f;
+                    float perpendicularVelocity = 0f;
+                    if (mVelocityTracker != null) {
+                        float maxVelocity = MAX_DISMISS_VELOCITY * mDensityScale;
+                        mVelocityTracker.computeCurrentVelocity(1000 /* px/sec */, maxVelocity);
+                        velocity = getVelocity(mVelocityTracker);
+                        perpendicularVelocity = getPerpendicularVelocity(mVelocityTracker);
+                    }
                     float escapeVelocity = SWIPE_ESCAPE_VELOCITY * mDensityScale;
-                    float velocity = getVelocity(mVelocityTracker);
-                    float perpendicularVelocity = getPerpendicularVelocity(mVelocityTracker);
                     float translation = getTranslation(mCurrAnimView);
 
-                    // Decide whether to dismiss the current view
+                    // Decide whether to dismiss the current view: predict where
+                    // the fling would bring it, so a short fling past the edge
+                    // dismisses it, and a fling back from the edge doesn't.
+                    float predicted = translation + velocity * FLING_PREDICTION_TIME;
                     boolean childSwipedFarEnough = DISMISS_IF_SWIPED_FAR_ENOUGH &&
-                            Math.abs(translation) > 0.4 * getSize(mCurrAnimView);
+                            (predicted > 0) == (translation > 0) &&
+                            Math.abs(predicted) > SWIPED_FAR_ENOUGH_SIZE_FRACTION * getSize(mCurrAnimView);
                     boolean childSwipedFastEnough = (Math.abs(velocity) > escapeVelocity) &&
                             (Math.abs(velocity) > Math.abs(perpendicularVelocity)) &&
                             (velocity > 0) == (translation > 0) &&
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the {@link TimeoutScheduler} with a virtual clock.
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class TimeoutSchedulerTest {
+
+    /**
+     * The virtual clock with a single pending wake-up.
+     */
+    private static class VirtualHost implements TimeoutScheduler.Host {
+
+        long now = 1000;
+        long wakeUpAt = -1;
+        int wakeUpCount;
+        Runnable runnable;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void wakeUpAt(@NonNull Runnable runnable, long uptimeMillis) {
+            this.runnable = runnable;
+            this.wakeUpAt = uptimeMillis;
+            this.wakeUpCount++;
+        }
+
+        /**
+         * Moves the clock forward, running the wake-ups on the way.
+         */
+        void advance(long millis) {
+            final long to = now + millis;
+            while (wakeUpAt != -1 && wakeUpAt <= to) {
+                now = Math.max(now, wakeUpAt);
+                wakeUpAt = -1;
+                runnable.run();
+            }
+            now = to;
+        }
+
+    }
+
+    private static class Recorder implements Timeout.OnTimeoutEventListener {
+
+        final ArrayList<Integer> events = new ArrayList<>();
+        long timedOutAt = -1;
+        VirtualHost host;
+
+        Recorder(VirtualHost host) {
+            this.host = host;
+        }
+
+        @Override
+        public void onTimeoutEvent(@NonNull Timeout timeout, int event) {
+            events.add(event);
+            if (event == Timeout.EVENT_TIMEOUT) timedOutAt = host.now;
+        }
+
+    }
+
+    private VirtualHost mHost;
+    private TimeoutScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mHost = new VirtualHost();
+        mScheduler = new TimeoutScheduler(mHost);
+    }
+
+    @Test
+    public void testTimeout() {
+        Timeout timeout = new Timeout(mScheduler);
+        Recorder recorder = new Recorder(mHost);
+        timeout.registerListener(recorder);
+
+        timeout.set(500);
+        mHost.advance(499);
+        assertEquals(-1, recorder.timedOutAt);
+        mHost.advance(1);
+        assertEquals(1500, recorder.timedOutAt);
+        assertEquals(0, mScheduler.getCount());
+    }
+
+    @Test
+    public void testPauseResume() {
+        Timeout timeout = new Timeout(mScheduler);
+        Recorder recorder = new Recorder(mHost);
+        timeout.registerListener(recorder);
+
+        timeout.set(500);
+        mHost.advance(200);
+        timeout.pause();
+        mHost.advance(1000);
+        assertEquals(-1, recorder.timedOutAt);
+        timeout.resume();
+        mHost.advance(300);
+        assertEquals(2500, recorder.timedOutAt);
+    }
+
+    @Test
+    public void testClear() {
+        Timeout timeout = new Timeout(mScheduler);
+        Recorder recorder = new Recorder(mHost);
+        timeout.registerListener(recorder);
+
+        timeout.set(500);
+        timeout.clear();
+        mHost.advance(1000);
+        assertEquals(-1, recorder.timedOutAt);
+        assertEquals(Timeout.EVENT_CLEARED, (int) recorder.events.get(recorder.events.size() - 1));
+    }
+
+    @Test
+    public void testPostponingIsLazy() {
+        Timeout timeout = new Timeout(mScheduler);
+        Recorder recorder = new Recorder(mHost);
+        timeout.registerListener(recorder);
+
+        // Postponing doesn't touch the wake-up, so it's re-armed only
+        // when the old deadline comes: once per 500 millis, instead of
+        // on each of the 100 updates.
+        timeout.set(500, true);
+        final int wakeUps = mHost.wakeUpCount;
+        for (int i = 0; i < 100; i++) {
+            mHost.advance(10);
+            timeout.set(500, true);
+        }
+        assertTrue(mHost.wakeUpCount - wakeUps <= 100 * 10 / 500);
+
+        mHost.advance(500);
+        assertEquals(1000 + 100 * 10 + 500, recorder.timedOutAt);
+    }
+
+    @Test
+    public void testManyTimeouts() {
+        Random random = new Random(42);
+        final int count = 200;
+        Timeout[] timeouts = new Timeout[count];
+        Recorder[] recorders = new Recorder[count];
+        long[] deadlines = new long[count];
+        for (int i = 0; i < count; i++) {
+            timeouts[i] = new Timeout(mScheduler);
+            recorders[i] = new Recorder(mHost);
+            timeouts[i].registerListener(recorders[i]);
+        }
+
+        // Set, reset and clear timeouts in random order.
+        for (int step = 0; step < 5000; step++) {
+            final int i = random.nextInt(count);
+            if (random.nextInt(10) == 0) {
+                timeouts[i].clear();
+                deadlines[i] = -1;
+            } else if (recorders[i].timedOutAt == -1) {
+                final int delay = 1 + random.nextInt(5000);
+                timeouts[i].set(delay, true);
+                deadlines[i] = mHost.now + delay;
+            }
+            mHost.advance(random.nextInt(3));
+        }
+
+        mHost.advance(10000);
+        for (int i = 0; i < count; i++) {
+            if (recorders[i].timedOutAt == -1) {
+                assertTrue(deadlines[i] <= 0);
+            } else if (deadlines[i] > 0) {
+                assertEquals(deadlines[i], recorders[i].timedOutAt);
+            }
+        }
+        assertEquals(0, mScheduler.getCount());
+    }
+
+}
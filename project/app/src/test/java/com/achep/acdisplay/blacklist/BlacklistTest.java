@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.blacklist;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class BlacklistTest {
+
+    private static final int APPS = 500;
+    private static final int LOOKUPS = 2000;
+
+    @Test
+    public void testGetAppFlags() {
+        Context context = Robolectric.application;
+        Blacklist blacklist = Blacklist.getInstance();
+        blacklist.init(context);
+
+        for (int i = 0; i < APPS; i++) {
+            AppConfig config = new AppConfig("com.example.app" + i, i % 2 == 0, i % 3 == 0);
+            blacklist.saveAppConfig(context, config, null);
+        }
+
+        // Check the index.
+        for (int i = 0; i < APPS; i++) {
+            String packageName = "com.example.app" + i;
+            AppConfig config = blacklist.getAppConfig(packageName);
+            int flags = blacklist.getAppFlags(packageName);
+            assertEquals(config.isHidden(), (flags & Blacklist.FLAG_HIDDEN) != 0);
+            assertEquals(config.isNonClearableEnabled(), (flags & Blacklist.FLAG_NON_CLEARABLE) != 0);
+            assertEquals(i % 2 == 0, config.isHidden());
+            assertEquals(i % 3 == 0, config.isNonClearableEnabled());
+        }
+
+        String[] packages = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) packages[i] = "com.example.app" + (i * 7 % (APPS * 2));
+
+        // The indexed flags agree with the linear walk
+        // over the configs, including unknown apps.
+        int hiddenLinear = 0;
+        for (String packageName : packages) {
+            AppConfig config = new AppConfig(packageName);
+            for (AppConfig c : blacklist.values()) {
+                if (c.equals(config)) {
+                    AppConfig.copy(c, config);
+                    break;
+                }
+            }
+            if (config.isHidden()) hiddenLinear++;
+        }
+
+        int hiddenIndexed = 0;
+        for (String packageName : packages) {
+            if ((blacklist.getAppFlags(packageName) & Blacklist.FLAG_HIDDEN) != 0) hiddenIndexed++;
+        }
+        assertEquals(hiddenLinear, hiddenIndexed);
+
+        // Removing the config resets the flags.
+        blacklist.saveAppConfig(context, new AppConfig("com.example.app0"), null);
+        assertEquals(0, blacklist.getAppFlags("com.example.app0"));
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.app.Notification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class NotificationListTest {
+
+    @Test
+    public void testPushReplaceRemove() {
+        NotificationList list = new NotificationList(null);
+        TestNotification a = new TestNotification("a");
+        TestNotification b = new TestNotification("b");
+        TestNotification c = new TestNotification("c");
+        list.push(a);
+        list.push(b);
+        list.push(c);
+
+        // Replacing keeps the insertion order.
+        TestNotification b2 = new TestNotification("b");
+        list.push(b2);
+        assertEquals(3, list.list().size());
+        assertEquals(1, list.list().indexOf(b2));
+        assertSame(b2, list.list().get(1));
+        assertSame(b2, list.get(b));
+
+        list.remove(new TestNotification("a"));
+        assertFalse(list.contains(a));
+        assertEquals(0, list.list().indexOf(b2));
+        assertEquals(1, list.list().indexOf(c));
+
+        list.clear();
+        assertTrue(list.list().isEmpty());
+        assertFalse(list.contains(c));
+    }
+
+    @Test
+    public void testMaximumSize() {
+        NotificationList list = new NotificationList(null);
+        list.setMaximumSize(2);
+        for (int i = 0; i < 5; i++) list.push(new TestNotification("key_" + i));
+
+        // The oldest notifications are dropped first.
+        assertEquals(3, list.list().size());
+        assertFalse(list.contains(new TestNotification("key_1")));
+        assertSame(list.get(new TestNotification("key_2")), list.list().get(0));
+        assertSame(list.get(new TestNotification("key_4")), list.list().get(2));
+    }
+
+    @Test
+    public void testListFollowsIndex() {
+        NotificationList list = new NotificationList(null);
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            TestNotification n = new TestNotification("key_" + random.nextInt(50));
+            if (random.nextInt(4) == 0) {
+                list.remove(n);
+                assertFalse(list.contains(n));
+                assertFalse(list.list().contains(n));
+            } else {
+                list.push(n);
+                assertSame(n, list.get(n));
+                assertTrue(list.list().contains(n));
+            }
+        }
+        for (OpenNotification n : list.list()) assertSame(n, list.get(n));
+    }
+
+    @Test
+    public void testRemoveWhileIterating() {
+        final int[] removed = new int[1];
+        NotificationList list = new NotificationList(new ListenerAdapter() {
+            @Override
+            public int onNotificationRemoved(@NonNull OpenNotification n) {
+                removed[0]++;
+                return 0;
+            }
+        });
+        for (int i = 0; i < 10; i++) list.push(new TestNotification("key_" + i));
+
+        // The removal doesn't shrink the list got before, so
+        // remove the notifications while iterating a copy.
+        ArrayList<OpenNotification> copy = new ArrayList<>(list.list());
+        for (int i = 0; i < copy.size(); i++) {
+            if (i % 2 == 0) list.remove(copy.get(i));
+        }
+
+        assertEquals(5, removed[0]);
+        assertEquals(5, list.list().size());
+        for (int i = 0; i < 5; i++) assertSame(copy.get(i * 2 + 1), list.list().get(i));
+    }
+
+    /**
+     * The listener that ignores all events.
+     */
+    private static class ListenerAdapter implements
+            NotificationList.OnNotificationListChangedListener {
+
+        @Override
+        public int onNotificationAdded(@NonNull OpenNotification n) {
+            return 0;
+        }
+
+        @Override
+        public int onNotificationChanged(@NonNull OpenNotification n,
+                                         @NonNull OpenNotification old) {
+            return 0;
+        }
+
+        @Override
+        public int onNotificationRemoved(@NonNull OpenNotification n) {
+            return 0;
+        }
+
+    }
+
+    /**
+     * The most simple implementation of {@link OpenNotification}.
+     */
+    private static class TestNotification extends OpenNotification {
+
+        @NonNull
+        private final String mKey;
+
+        TestNotification(@NonNull String key) {
+            super(null, new Notification());
+            mKey = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return mKey.hashCode();
+        }
+
+        @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+        @Override
+        public boolean equals(Object o) {
+            return o == this;
+        }
+
+        @Override
+        public boolean hasIdenticalIds(@Nullable OpenNotification n) {
+            return n != null && mKey.equals(n.getIdentityKey());
+        }
+
+        @NonNull
+        @Override
+        public Object getIdentityKey() {
+            return mKey;
+        }
+
+        @NonNull
+        @Override
+        public String getPackageName() {
+            return "com.achep.headsup.test";
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.app.Notification;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the group flags of {@link OpenNotificationLollipop}. Robolectric
+ * emulates the pre-Lollipop {@link Notification} with no groups, so the
+ * constructor always takes the reflective fallback here.
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class OpenNotificationLollipopTest {
+
+    /**
+     * The stand-in for {@link Notification} with the same hidden methods.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    private static class GroupedNotification {
+
+        private boolean isGroupChild() {
+            return true;
+        }
+
+        private boolean isGroupSummary() {
+            throw new IllegalStateException();
+        }
+
+    }
+
+    @Test
+    public void testFallbackWithoutGroups() {
+        Notification n = new Notification();
+        n.flags |= 0x00000200; // Notification.FLAG_GROUP_SUMMARY
+
+        // There's neither the public API nor the hidden methods on this
+        // platform, so the notification is not grouped.
+        OpenNotificationLollipop notification = new OpenNotificationLollipop(null, n);
+        assertFalse(notification.isGroupChild());
+        assertFalse(notification.isGroupSummary());
+    }
+
+    @Test
+    public void testReflectiveAccessors() {
+        GroupedNotification n = new GroupedNotification();
+        Method child = OpenNotificationLollipop.findMethod(GroupedNotification.class, "isGroupChild");
+        Method summary = OpenNotificationLollipop.findMethod(GroupedNotification.class, "isGroupSummary");
+        assertNotNull(child);
+        assertNotNull(summary);
+        assertTrue(OpenNotificationLollipop.invokeBoolean(n, child));
+
+        // Failures of the methods are not thrown.
+        assertFalse(OpenNotificationLollipop.invokeBoolean(n, summary));
+        assertNull(OpenNotificationLollipop.findMethod(GroupedNotification.class, "isGrouped"));
+        assertFalse(OpenNotificationLollipop.invokeBoolean(n, null));
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.notifications;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.view.View;
+import android.widget.RemoteViews;
+import android.widget.TextView;
+
+import com.achep.headsup.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the pool of the inflated layouts of remote views.
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class RemoteViewsCacheTest {
+
+    private static final int LAYOUT = R.layout.layout_item_title_summary;
+
+    @Test
+    public void testPool() {
+        Context context = Robolectric.application;
+        String packageName = context.getPackageName();
+        RemoteViewsCache cache = RemoteViewsCache.getInstance();
+        cache.evictAll();
+
+        assertNull(cache.obtain(packageName, LAYOUT));
+        RemoteViewsCache.Layout layout = RemoteViewsCache.inflate(context, packageName, LAYOUT);
+        assertEquals(2, layout.textViews.length);
+        cache.recycle(layout);
+
+        assertSame(layout, cache.obtain(packageName, LAYOUT));
+        assertNull(cache.obtain(packageName, LAYOUT)); // it's in use
+        cache.recycle(layout);
+
+        cache.invalidate(packageName);
+        assertNull(cache.obtain(packageName, LAYOUT));
+    }
+
+    @Test
+    public void testReapplyResetsTextViews() {
+        Context context = Robolectric.application;
+        String packageName = context.getPackageName();
+        RemoteViewsCache cache = RemoteViewsCache.getInstance();
+        cache.evictAll();
+
+        RemoteViews first = new RemoteViews(packageName, LAYOUT);
+        first.setTextViewText(android.R.id.title, "Title");
+        first.setTextViewText(android.R.id.summary, "Summary");
+        first.setViewVisibility(android.R.id.summary, View.GONE);
+        first.setOnClickPendingIntent(android.R.id.title,
+                PendingIntent.getBroadcast(context, 0, new Intent("test"), 0));
+        RemoteViews second = new RemoteViews(packageName, LAYOUT);
+        second.setTextViewText(android.R.id.title, "Other title");
+
+        RemoteViewsCache.Layout layout = RemoteViewsCache.inflate(context, packageName, LAYOUT);
+        first.reapply(context, layout.view);
+        TextView title = (TextView) layout.view.findViewById(android.R.id.title);
+        TextView summary = (TextView) layout.view.findViewById(android.R.id.summary);
+        assertEquals(View.GONE, summary.getVisibility());
+        assertTrue(title.isClickable());
+        cache.recycle(layout);
+
+        // The second remote views set only the title: nothing
+        // of the first ones must leak.
+        assertSame(layout, cache.obtain(packageName, LAYOUT));
+        second.reapply(context, layout.view);
+        assertEquals("Other title", title.getText().toString());
+        assertEquals("", summary.getText().toString());
+        assertEquals(View.VISIBLE, summary.getVisibility());
+        assertFalse(title.isClickable());
+        cache.recycle(layout);
+    }
+
+}
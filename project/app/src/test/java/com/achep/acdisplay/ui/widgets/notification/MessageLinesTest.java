@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.acdisplay.ui.widgets.notification;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.achep.headsup.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks laying out and rendering the lines of a 7-line InboxStyle
+ * notification, and that re-rendering them reuses the arrays and views.
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class MessageLinesTest {
+
+    private static final int RENDERS = 100;
+    private static final int MAX_LINES = 6;
+
+    private static final CharSequence[] LINES = new CharSequence[]{
+            "Alice  Lunch tomorrow?",
+            "Bob  The build is green again",
+            "Carol  Photos from the trip",
+            "Dave  Re: invoice",
+            "Eve  See you there",
+            "Frank  A very long message that is going to take more than one line for sure",
+            "Grace  ok",
+    };
+
+    @Test
+    public void testLayout() {
+        MessageLinesLayout layout = new MessageLinesLayout();
+        layout.layout(LINES, MAX_LINES);
+        assertEquals(MAX_LINES, layout.getCount());
+        for (int i = 0; i < MAX_LINES; i++) assertEquals(1, layout.getMaxLines(i));
+
+        CharSequence[] lines = new CharSequence[]{"short", LINES[5]};
+        layout.layout(lines, MAX_LINES);
+        assertEquals(2, layout.getCount());
+        assertEquals(1, layout.getMaxLines(0));
+        assertEquals(MAX_LINES - 1, layout.getMaxLines(1));
+    }
+
+    @Test
+    public void testLayoutReusesArrays() throws Exception {
+        MessageLinesLayout layout = new MessageLinesLayout();
+        layout.layout(LINES, MAX_LINES);
+        final int[] maxLines = getArray(layout, "mMaxLines");
+        final int[] lengths = getArray(layout, "mLengths");
+
+        // Fewer messages fit the same arrays.
+        CharSequence[] lines = new CharSequence[]{"short", LINES[5]};
+        for (int i = 0; i < RENDERS; i++) {
+            layout.layout(i % 2 == 0 ? LINES : lines, MAX_LINES);
+            assertSame(maxLines, getArray(layout, "mMaxLines"));
+            assertSame(lengths, getArray(layout, "mLengths"));
+        }
+    }
+
+    @Test
+    public void testWidgetReusesViews() {
+        Context context = new ContextThemeWrapper(Robolectric.application, R.style.MaterialTheme);
+        NotificationWidget widget = (NotificationWidget) LayoutInflater.from(context)
+                .inflate(R.layout.notification, null, false);
+        ViewGroup container = (ViewGroup) widget.findViewById(R.id.message_container);
+
+        // The first render inflates the message views.
+        widget.setMessageLines(LINES);
+        final int count = container.getChildCount();
+        View[] views = new View[count];
+        for (int i = 0; i < count; i++) views[i] = container.getChildAt(i);
+
+        // Re-rendering the same lines must reuse all of the views.
+        for (int i = 0; i < RENDERS; i++) widget.setMessageLines(LINES);
+        assertTrue(count > 1);
+        assertEquals(count, container.getChildCount());
+        for (int i = 0; i < count; i++) assertSame(views[i], container.getChildAt(i));
+    }
+
+    @NonNull
+    private static int[] getArray(@NonNull MessageLinesLayout layout,
+                                  @NonNull String name) throws Exception {
+        Field field = MessageLinesLayout.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (int[]) field.get(layout);
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.content;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class ConfigBaseTest {
+
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void testReadAllOptions() throws Exception {
+        ConfigBase config = com.achep.acdisplay.Config.getInstance();
+        Map<String, ConfigBase.Option> map = config.getHashMap();
+        Field fieldName = ConfigBase.Option.class.getDeclaredField("fieldName");
+        fieldName.setAccessible(true);
+        for (ConfigBase.Option option : map.values()) {
+            // Check that all options are compiled.
+            String key = option.getKey(config);
+            assertEquals(option, map.get(key));
+
+            // The compiled read must match the old way of reading:
+            // looking up the field each time.
+            Field field = config.getClass().getDeclaredField((String) fieldName.get(option));
+            field.setAccessible(true);
+            assertEquals(field.get(config), option.read(config));
+        }
+    }
+
+    @Test
+    public void testWriteAllOptions() {
+        Context context = Robolectric.application;
+        ConfigBase config = com.achep.acdisplay.Config.getInstance();
+        Map<String, ConfigBase.Option> map = config.getHashMap();
+
+        int writes = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            for (Map.Entry<String, ConfigBase.Option> entry : map.entrySet()) {
+                ConfigBase.Option option = entry.getValue();
+                Object value = option.read(config);
+                if (value instanceof Boolean) {
+                    value = !(Boolean) value;
+                } else if (value instanceof Integer) {
+                    value = (Integer) value + 1;
+                } else if (value instanceof String) {
+                    value = "value" + r;
+                } else continue; // not initialized
+
+                config.write(context, option, value, null);
+                assertEquals(value, option.read(config));
+                writes++;
+            }
+        }
+
+        assertTrue(writes > 0);
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.content;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class SharedListTest {
+
+    private static class StringSaver extends SharedList.Saver<String>
+            implements SharedListLog.Serializer<String> {
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor put(@NonNull String object,
+                                            @NonNull SharedPreferences.Editor editor,
+                                            int position) {
+            return editor.putString("value_" + position, object);
+        }
+
+        @Override
+        public String get(@NonNull SharedPreferences prefs, int position) {
+            return prefs.getString("value_" + position, null);
+        }
+
+        @Override
+        public void write(@NonNull String object, @NonNull DataOutput out) throws IOException {
+            out.writeUTF(object);
+        }
+
+        @NonNull
+        @Override
+        public String read(@NonNull DataInput in) throws IOException {
+            return in.readUTF();
+        }
+
+    }
+
+    private static class StringList extends SharedList<String, StringSaver> {
+
+        private final String mFileName;
+        private final boolean mLog;
+
+        StringList(@NonNull Context context, @NonNull String fileName, boolean log) {
+            mFileName = fileName;
+            mLog = log;
+            init(context);
+        }
+
+        @NonNull
+        @Override
+        protected String getPreferencesFileName() {
+            return mFileName;
+        }
+
+        @NonNull
+        @Override
+        protected Storage<String> onCreateStorage() {
+            return mLog ? new SharedListLog<>(mFileName, new StringSaver()) : super.onCreateStorage();
+        }
+
+        @NonNull
+        @Override
+        protected StringSaver onCreateSaver() {
+            return new StringSaver();
+        }
+
+    }
+
+    @Test
+    public void testLogReplay() {
+        Context context = Robolectric.application;
+        StringList list = new StringList(context, "replay", true);
+        HashSet<String> expected = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            String item = "item" + i;
+            list.put(context, item);
+            expected.add(item);
+            if (i % 2 == 0) {
+                list.remove(context, item);
+                expected.remove(item);
+            }
+        }
+
+        SharedListLog storage = (SharedListLog) list.getStorage();
+        assertTrue(storage.getCompactionsCount() > 0);
+
+        StringList restored = new StringList(context, "replay", true);
+        assertEquals(expected, restored.values());
+    }
+
+    @Test
+    public void testMigration() {
+        Context context = Robolectric.application;
+        StringList prefs = new StringList(context, "migration", false);
+        for (int i = 0; i < 10; i++) prefs.put(context, "item" + i);
+        prefs.remove(context, "item5");
+
+        StringList log = new StringList(context, "migration", true);
+        assertEquals(prefs.values(), log.values());
+
+        // The preferences must be cleared.
+        StringList empty = new StringList(context, "migration", false);
+        assertEquals(0, empty.values().size());
+
+        // Re-using the empty positions.
+        log.put(context, "item10");
+        StringList restored = new StringList(context, "migration", true);
+        assertEquals(log.values(), restored.values());
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws IOException {
+        Context context = Robolectric.application;
+        StringList list = new StringList(context, "corrupted", true);
+        list.put(context, "a");
+        list.put(context, "b");
+        list.put(context, "c");
+        // Wait for the pending writes.
+        new StringList(context, "corrupted", true);
+
+        // Make the string of the first record longer than
+        // its record: header(8) + op(1) + position(4) + length(4).
+        RandomAccessFile raf = new RandomAccessFile(
+                new File(context.getFilesDir(), "corrupted.log"), "rw");
+        try {
+            raf.seek(8 + 9 + 1);
+            raf.writeByte(5);
+        } finally {
+            raf.close();
+        }
+
+        StringList restored = new StringList(context, "corrupted", true);
+        HashSet<String> expected = new HashSet<>();
+        expected.add("b");
+        expected.add("c");
+        assertEquals(expected, restored.values());
+    }
+
+}
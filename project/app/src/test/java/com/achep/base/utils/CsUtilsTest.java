@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.utils;
+
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class CsUtilsTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("a\nb", CsUtils.normalize("  a\n\n\nb \n").toString());
+        assertEquals("", CsUtils.normalize(" \t\n").toString());
+
+        String normal = "nothing to change";
+        assertSame(normal, CsUtils.normalize(normal));
+    }
+
+    @Test
+    public void testNormalizeKeepsSpans() {
+        SpannableString spannable = new SpannableString(" bold\n\ntext ");
+        spannable.setSpan(new StyleSpan(0), 1, 5, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        CharSequence cs = CsUtils.normalize(spannable);
+        assertEquals("bold\ntext", cs.toString());
+        assertTrue(cs instanceof Spanned);
+        assertEquals(1, ((Spanned) cs).getSpans(0, cs.length(), StyleSpan.class).length);
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.base.utils.smiley;
+
+import android.content.Context;
+import android.text.Spanned;
+import android.text.style.ImageSpan;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class SmileyParserTest {
+
+    private static final String[] MESSAGES = new String[]{
+            "Hey! Are you coming tonight?",
+            "Sure :-) see you at 8",
+            "I can't, sorry :-( maybe next time",
+            "O:-) I promise I'll be good",
+            "lol :-D:-D:-D",
+            "ok",
+            "Did you see that? o_O",
+            "Love you <3 <3",
+            "Meeting moved to 15:00 (room 3)",
+            "Check this out: http://example.com/a:b;c",
+            ":-P;-):-*B-):O",
+            "Are you kidding me x-( I waited for an hour",
+            "Hmm :-/ not sure about it",
+            "Happy birthday!!! :-) :-) :-)",
+            "The price is $5:-$",
+            "Привет! Как дела? :-)",
+            "Call me when you're free",
+            "=-O what?! :-\\ really",
+            "Ha :'( that's sad",
+            "",
+    };
+
+    private SmileyParser mParser;
+    private Pattern mPattern;
+
+    @Before
+    public void setUp() {
+        Context context = Robolectric.application;
+        SmileyParser.init(context);
+        mParser = SmileyParser.getInstance();
+
+        // The regular expression used before.
+        String[] texts = context.getResources().getStringArray(SmileyParser.DEFAULT_SMILEY_TEXTS);
+        StringBuilder sb = new StringBuilder("(");
+        for (String s : texts) sb.append(Pattern.quote(s)).append('|');
+        sb.replace(sb.length() - 1, sb.length(), ")");
+        mPattern = Pattern.compile(sb.toString());
+    }
+
+    @Test
+    public void testSameAsRegex() {
+        for (String message : MESSAGES) {
+            ArrayList<int[]> expected = new ArrayList<>();
+            Matcher matcher = mPattern.matcher(message);
+            while (matcher.find()) expected.add(new int[]{matcher.start(), matcher.end()});
+
+            CharSequence result = mParser.addSmileySpans(message);
+            if (expected.isEmpty()) {
+                // Nothing to format: must be the same instance.
+                assertSame(message, result);
+                continue;
+            }
+
+            Spanned spanned = (Spanned) result;
+            ImageSpan[] spans = spanned.getSpans(0, spanned.length(), ImageSpan.class);
+            assertEquals(message, expected.size(), spans.length);
+            for (int[] range : expected) {
+                boolean found = false;
+                for (ImageSpan span : spans) {
+                    if (spanned.getSpanStart(span) == range[0]
+                            && spanned.getSpanEnd(span) == range[1]) {
+                        found = true;
+                        break;
+                    }
+                }
+                assertEquals(message + " @" + range[0], true, found);
+            }
+        }
+    }
+
+}
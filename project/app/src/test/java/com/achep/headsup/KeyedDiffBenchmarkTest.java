@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.headsup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times the {@link KeyedDiff} of reconciling 5 to 50 widgets with the shuffled
+ * lists of notifications. The bound is loose on purpose, to catch the diff
+ * getting pathologically slow rather than the noise of the machine.
+ *
+ * @see KeyedDiffTest
+ */
+public class KeyedDiffBenchmarkTest {
+
+    private static final int[] SIZES = new int[]{5, 10, 20, 50};
+    private static final int RUNS = 2000;
+
+    /**
+     * The maximum average time of one reconcile of 50 widgets.
+     */
+    private static final long MAX_NANOS_PER_RECONCILE = 1000 * 1000; // 1 ms.
+
+    @Test
+    public void benchmarkReconcile() {
+        Random random = new Random(42);
+        KeyedDiff diff = new KeyedDiff();
+        for (int size : SIZES) {
+            List<List<Integer>> olds = new ArrayList<>(RUNS);
+            List<List<Integer>> news = new ArrayList<>(RUNS);
+            for (int i = 0; i < RUNS; i++) {
+                olds.add(shuffled(random, size, size * 3 / 2));
+                news.add(shuffled(random, size, size * 3 / 2));
+            }
+
+            // Warm up.
+            for (int i = 0; i < RUNS; i++) diff.diff(olds.get(i), news.get(i));
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                diff.diff(olds.get(i), news.get(i));
+
+                // Every item is removed, inserted or moved at most once.
+                assertTrue(diff.getCount() <= olds.get(i).size() + news.get(i).size());
+            }
+            final long nanos = (System.nanoTime() - start) / RUNS;
+
+            assertTrue("Reconciling " + size + " widgets took " + nanos + " ns.",
+                    nanos < MAX_NANOS_PER_RECONCILE);
+        }
+    }
+
+    private static List<Integer> shuffled(Random random, int size, int range) {
+        List<Integer> keys = new ArrayList<>(range);
+        for (int i = 0; i < range; i++) keys.add(i);
+        Collections.shuffle(keys, random);
+        return new ArrayList<>(keys.subList(0, Math.min(size, range)));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.headsup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link KeyedDiff} on shuffled lists.
+ */
+public class KeyedDiffTest {
+
+    private static final int RUNS = 2000;
+
+    @Test
+    public void testMinimalMoves() {
+        KeyedDiff diff = new KeyedDiff();
+        diff.diff(Arrays.asList(3, 0, 1, 2), Arrays.asList(0, 1, 2, 3));
+        assertEquals(1, diff.getCount());
+        assertEquals(KeyedDiff.OP_MOVE, diff.getOp(0));
+
+        diff.diff(Arrays.asList(0, 1, 2), Arrays.asList(0, 1, 2));
+        assertEquals(0, diff.getCount());
+    }
+
+    @Test
+    public void testShuffled() {
+        Random random = new Random(42);
+        KeyedDiff diff = new KeyedDiff();
+        for (int i = 0; i < RUNS; i++) {
+            List<Integer> oldKeys = shuffled(random, random.nextInt(60), 60);
+            List<Integer> newKeys = shuffled(random, random.nextInt(60), 60);
+            diff.diff(oldKeys, newKeys);
+            assertEquals(newKeys, apply(diff, oldKeys, newKeys));
+        }
+    }
+
+    private static List<Integer> shuffled(Random random, int size, int range) {
+        List<Integer> keys = new ArrayList<>(range);
+        for (int i = 0; i < range; i++) keys.add(i);
+        Collections.shuffle(keys, random);
+        return new ArrayList<>(keys.subList(0, Math.min(size, range)));
+    }
+
+    private static List<Integer> apply(KeyedDiff diff, List<Integer> oldKeys,
+                                       List<Integer> newKeys) {
+        List<Integer> list = new ArrayList<>(oldKeys);
+        for (int i = 0; i < diff.getCount(); i++) {
+            switch (diff.getOp(i)) {
+                case KeyedDiff.OP_REMOVE:
+                    list.remove(diff.getFrom(i));
+                    break;
+                case KeyedDiff.OP_INSERT:
+                    list.add(diff.getFrom(i), newKeys.get(diff.getTo(i)));
+                    break;
+                case KeyedDiff.OP_MOVE:
+                    list.add(diff.getTo(i), list.remove(diff.getFrom(i)));
+                    break;
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2015 AChep@xda <artemchep@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.achep.headsup;
+
+import android.support.annotation.NonNull;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Replays recorded touch streams through the {@link SwipeHelper}.
+ */
+@Config(manifest = "./src/main/AndroidManifest.xml", emulateSdk = 18)
+@RunWith(RobolectricTestRunner.class)
+public class SwipeHelperTouchReplayTest {
+
+    private static final int DOWN = MotionEvent.ACTION_DOWN;
+    private static final int MOVE = MotionEvent.ACTION_MOVE;
+    private static final int UP = MotionEvent.ACTION_UP;
+
+    private static final int VIEW_WIDTH = 400;
+
+    /**
+     * A quick fling to the right: 25% of the width in 50 millis.
+     * Each sample is {time, action, x, y}.
+     */
+    private static final float[][] FLING = {
+            {0, DOWN, 50, 50},
+            {10, MOVE, 70, 50},
+            {20, MOVE, 90, 50},
+            {30, MOVE, 110, 50},
+            {40, MOVE, 130, 50},
+            {50, MOVE, 150, 50},
+            {50, UP, 150, 50},
+    };
+
+    private static final float[][] SLOW_DRAG = recordSlowDrag(50, 150);
+
+    private static final float[][] FLING_BACK;
+
+    static {
+        // Drag out slowly past the dismissal threshold,
+        // and then fling back quickly.
+        float[][] out = recordSlowDrag(50, 360);
+        final float t = out[out.length - 2][0];
+        FLING_BACK = new float[out.length + 2][];
+        System.arraycopy(out, 0, FLING_BACK, 0, out.length - 1);
+        FLING_BACK[out.length - 1] = new float[]{t + 10, MOVE, 330, 50};
+        FLING_BACK[out.length] = new float[]{t + 20, MOVE, 300, 50};
+        FLING_BACK[out.length + 1] = new float[]{t + 20, UP, 300, 50};
+    }
+
+    /**
+     * @return the drag of 5 pixels per 100 millis.
+     */
+    private static float[][] recordSlowDrag(float from, float to) {
+        ArrayList<float[]> stream = new ArrayList<>();
+        stream.add(new float[]{0, DOWN, from, 50});
+        float t = 0;
+        for (float x = from + 5; x <= to; x += 5) {
+            stream.add(new float[]{t += 100, MOVE, x, 50});
+        }
+        stream.add(new float[]{t, UP, to, 50});
+        return stream.toArray(new float[stream.size()][]);
+    }
+
+    private static class Recorder implements SwipeHelper.Callback {
+
+        final View view;
+        int beginDragCount;
+        int dragCancelledCount;
+        int dismissedCount;
+
+        Recorder(View view) {
+            this.view = view;
+        }
+
+        @Override
+        public View getChildAtPosition(MotionEvent ev) {
+            return view;
+        }
+
+        @Override
+        public View getChildContentView(View v) {
+            return view;
+        }
+
+        @Override
+        public boolean canChildBeDismissed(View v) {
+            return true;
+        }
+
+        @Override
+        public void onBeginDrag(View v) {
+            beginDragCount++;
+        }
+
+        @Override
+        public void onChildDismissed(View v) {
+            dismissedCount++;
+        }
+
+        @Override
+        public void onDragCancelled(View v) {
+            dragCancelledCount++;
+        }
+
+    }
+
+    private Recorder mRecorder;
+    private SwipeHelper mSwipeHelper;
+    private boolean mIntercepted;
+
+    /**
+     * The tracker shared by the window, like the {@link HeadsUpView} does,
+     * or {@code null} if the swipe helper uses its own one.
+     */
+    private VelocityTracker mSharedTracker;
+
+    @Before
+    public void setUp() {
+        View view = new View(Robolectric.application);
+        view.measure(
+                View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, VIEW_WIDTH, 100);
+
+        mRecorder = new Recorder(view);
+        mSwipeHelper = new SwipeHelper(SwipeHelper.X, mRecorder, 1f, 8f, false);
+    }
+
+    @After
+    public void tearDown() {
+        if (mSharedTracker != null) {
+            mSharedTracker.recycle();
+            mSharedTracker = null;
+        }
+    }
+
+    @Test
+    public void testFlingDismisses() {
+        replay(FLING);
+        assertEquals(1, mRecorder.beginDragCount);
+        assertEquals(0, mRecorder.dragCancelledCount);
+
+        // The dismissal is reported at the end of the animation.
+        assertEquals(0, mRecorder.dismissedCount);
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(1, mRecorder.dismissedCount);
+    }
+
+    @Test
+    public void testSlowDragSnapsBack() {
+        replay(SLOW_DRAG);
+        assertEquals(1, mRecorder.beginDragCount);
+        assertEquals(1, mRecorder.dragCancelledCount);
+
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(0, mRecorder.dismissedCount);
+    }
+
+    @Test
+    public void testFlingBackSnapsBack() {
+        // The view was released past the dismissal threshold, but the
+        // fling would bring it back, so it should not be dismissed.
+        replay(FLING_BACK);
+        assertEquals(1, mRecorder.beginDragCount);
+        assertEquals(1, mRecorder.dragCancelledCount);
+
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(0, mRecorder.dismissedCount);
+    }
+
+    @Test
+    public void testSharedTracker() {
+        mSharedTracker = VelocityTracker.obtain();
+        mSwipeHelper.setVelocityTracker(mSharedTracker);
+
+        replay(FLING);
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(0, mRecorder.dragCancelledCount);
+        assertEquals(1, mRecorder.dismissedCount);
+
+        // Reuse the dismissed view.
+        mRecorder.view.setTranslationX(0);
+        replay(FLING_BACK);
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(1, mRecorder.dragCancelledCount);
+        assertEquals(1, mRecorder.dismissedCount);
+    }
+
+    @Test
+    public void testCancelDoesNotDismiss() {
+        // The view gets recycled in the middle of the fling.
+        replay(FLING);
+        mSwipeHelper.cancel();
+
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(0, mRecorder.dismissedCount);
+    }
+
+    @Test
+    public void testOwnTrackerIsReused() throws Exception {
+        replay(FLING);
+        final Object tracker = getField("mVelocityTracker");
+        assertNotNull(tracker);
+        replay(SLOW_DRAG);
+        assertSame(tracker, getField("mVelocityTracker"));
+    }
+
+    @Test
+    public void testSharedTrackerIsUsed() throws Exception {
+        mSharedTracker = VelocityTracker.obtain();
+        mSwipeHelper.setVelocityTracker(mSharedTracker);
+
+        // Swipe helper must not obtain its own tracker.
+        replay(SLOW_DRAG);
+        assertSame(mSharedTracker, getField("mVelocityTracker"));
+    }
+
+    @Test
+    public void testAnimatorIsReused() throws Exception {
+        replay(FLING);
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        final Object animator = getField("mAnimator");
+        assertNotNull(animator);
+
+        // Reuse the dismissed view.
+        mRecorder.view.setTranslationX(0);
+        replay(SLOW_DRAG);
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        assertSame(animator, getField("mAnimator"));
+        assertEquals(1, mRecorder.dismissedCount);
+    }
+
+    private Object getField(@NonNull String name) throws Exception {
+        Field field = SwipeHelper.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(mSwipeHelper);
+    }
+
+    //-- REPLAYING ------------------------------------------------------------
+
+    private static MotionEvent obtain(float time, int action, float x, float y) {
+        return MotionEvent.obtain(0, (long) time, action, x, y, 0);
+    }
+
+    /**
+     * Dispatches the event like a view group does: the swipe helper sees the
+     * events in {@link SwipeHelper#onInterceptTouchEvent(MotionEvent)} until it
+     * intercepts the gesture, and in {@link SwipeHelper#onTouchEvent(MotionEvent)} then.
+     * The shared tracker, if any, is fed before, as the window does.
+     */
+    private void dispatch(MotionEvent event) {
+        if (mSharedTracker != null) {
+            if (event.getActionMasked() == DOWN) mSharedTracker.clear();
+            mSharedTracker.addMovement(event);
+        }
+
+        if (event.getActionMasked() == DOWN) mIntercepted = false;
+        if (!mIntercepted) {
+            mIntercepted = mSwipeHelper.onInterceptTouchEvent(event);
+        } else mSwipeHelper.onTouchEvent(event);
+    }
+
+    private void replay(float[][] stream) {
+        mIntercepted = false;
+        for (float[] sample : stream) {
+            MotionEvent event = obtain(sample[0], (int) sample[1], sample[2], sample[3]);
+            dispatch(event);
+            event.recycle();
+        }
+    }
+
+}